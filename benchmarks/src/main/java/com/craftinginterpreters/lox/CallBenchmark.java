@@ -0,0 +1,57 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CallBenchmark
+ * Calls a recursive fib on the Interpreter, almost all of the time goes to
+ * calls and returns. Compare gc.alloc.rate.norm to see what a call allocates,
+ * and jit=false to see what compiling the hot statements brings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallBenchmark {
+
+  @Param({ "20", "25", "30" })
+  public int n;
+
+  @Param({ "true", "false" })
+  public boolean jit;
+
+  private Interpreter interpreter;
+  private Expr call;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    String source = "fun fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n" + "fib(" + n + ");";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    interpreter = new Interpreter(new Environment(), OutputSink.of(null), Lox.reporter, jit);
+    new Resolver(interpreter.globals).resolve(statements);
+    interpreter.interpret(statements.subList(0, 1));
+
+    call = ((Stmt.Expression) statements.get(1)).expr;
+  }
+
+  @Benchmark
+  public Object fib() {
+    return interpreter.evaluate(call);
+  }
+}
@@ -0,0 +1,168 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Corpus
+ * Lox sources the benchmarks run over. Everything but "small" is generated
+ * with a fixed seed so runs stay comparable between builds.
+ */
+final class Corpus {
+
+  static final int LARGE_BYTES = 10 * 1024 * 1024;
+  static final int WORKLOAD_BYTES = 1024 * 1024;
+  static final int CONCAT_PIECES = 5000;
+
+  private Corpus() {
+  }
+
+  /**
+   * @param name one of small, large, arithmetic, strings or concat
+   * @return the script source
+   */
+  static String get(String name) {
+    switch (name) {
+      case "small":
+        return small();
+      case "large":
+        return mixed(LARGE_BYTES);
+      case "arithmetic":
+        return arithmetic(WORKLOAD_BYTES);
+      case "strings":
+        return strings(WORKLOAD_BYTES);
+      case "concat":
+        return concat(CONCAT_PIECES);
+      default:
+        throw new IllegalArgumentException("Unknown corpus '" + name + "'.");
+    }
+  }
+
+  /**
+   * The code.jlox shipped at the root of the repo, or an equivalent script if
+   * the benchmarks are not run from a checkout
+   */
+  private static String small() {
+    try {
+      return Files.readString(Paths.get("../code.jlox"), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return "// Single-line comment\n"
+          + "var x = 42;\n"
+          + "var y = x + 3.14 * (5 - 2) >= 10;\n"
+          + "/* This is a comment\n   /* Nested block */\n   Ends here */\n"
+          + "print \"Hello, world!\";\n"
+          + "var weird = !true == false;\n"
+          + "print \"one\";\nprint true;\nprint 2 + 1;\n"
+          + "var bar = 13;\nvar boo = 2;\nprint bar + boo;\n";
+    }
+  }
+
+  private static String arithmetic(int bytes) {
+    Random random = new Random(42);
+    StringBuilder builder = new StringBuilder(bytes + 128);
+    int count = 0;
+    builder.append("var n0 = 1;\n");
+    while (builder.length() < bytes) {
+      count++;
+      builder.append("var n").append(count).append(" = ")
+          .append("n").append(random.nextInt(count)).append(" + ")
+          .append(random.nextInt(100)).append(".5 * (")
+          .append(random.nextInt(50) + 1).append(" - ")
+          .append(random.nextInt(50)).append(") / ")
+          .append(random.nextInt(9) + 1).append(" - -")
+          .append("n").append(random.nextInt(count)).append(";\n");
+      if (count % 64 == 0) {
+        builder.append("print n").append(count).append(" >= n").append(random.nextInt(count)).append(";\n");
+      }
+    }
+    return builder.toString();
+  }
+
+  private static String strings(int bytes) {
+    Random random = new Random(7);
+    StringBuilder builder = new StringBuilder(bytes + 128);
+    int count = 0;
+    builder.append("var s0 = \"seed\";\n");
+    while (builder.length() < bytes) {
+      count++;
+      builder.append("var s").append(count).append(" = ")
+          .append("\"").append(word(random)).append("\" + \"").append(word(random)).append("\" + ")
+          .append(random.nextInt(1000)).append(";\n");
+      if (count % 16 == 0) {
+        builder.append("print s").append(count).append(" + s").append(random.nextInt(count)).append(";\n");
+        builder.append("print s").append(random.nextInt(count)).append(" < \"")
+            .append(word(random)).append("\";\n");
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * One string built a piece at a time, every step kept in its own variable,
+   * compared by length now and then
+   */
+  private static String concat(int pieces) {
+    Random random = new Random(11);
+    StringBuilder builder = new StringBuilder(pieces * 48);
+    builder.append("var s0 = \"seed\";\n");
+    for (int count = 1; count <= pieces; count++) {
+      builder.append("var s").append(count).append(" = s").append(count - 1).append(" + \"")
+          .append(word(random)).append(" \" + ").append(random.nextInt(1000)).append(";\n");
+      if (count % 64 == 0)
+        builder.append("print s").append(count).append(" > s").append(random.nextInt(count)).append(";\n");
+    }
+    builder.append("print s").append(pieces).append(" == s").append(pieces - 1).append(" + \"\";\n");
+    return builder.toString();
+  }
+
+  private static String mixed(int bytes) {
+    Random random = new Random(1);
+    StringBuilder builder = new StringBuilder(bytes + 128);
+    int count = 0;
+    // Only numbers are safe operands for the arithmetic statements
+    int[] numbers = new int[bytes / 16];
+    int numberCount = 1;
+    builder.append("var v0 = 0;\n");
+    while (builder.length() < bytes) {
+      count++;
+      switch (random.nextInt(4)) {
+        case 0:
+          builder.append("// generated statement ").append(count).append('\n');
+          builder.append("var v").append(count).append(" = v").append(numbers[random.nextInt(numberCount)])
+              .append(" + ").append(random.nextInt(1000)).append(" * (")
+              .append(random.nextInt(10)).append(" - 2);\n");
+          numbers[numberCount++] = count;
+          break;
+        case 1:
+          builder.append("var v").append(count).append(" = \"").append(word(random)).append("\" + ")
+              .append(random.nextInt(10)).append(";\n");
+          break;
+        case 2:
+          builder.append("/* block /* nested */ comment */\n");
+          builder.append("var v").append(count).append(" = !true == false;\n");
+          break;
+        default:
+          builder.append("var v").append(count).append(" = ").append(random.nextInt(100))
+              .append(" >= ").append(random.nextInt(100)).append(";\n");
+          if (count % 32 == 0) {
+            builder.append("print v").append(count).append(";\n");
+          }
+          break;
+      }
+    }
+    return builder.toString();
+  }
+
+  private static String word(Random random) {
+    int length = 3 + random.nextInt(8);
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) ('a' + random.nextInt(26));
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,63 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EditBenchmark
+ * A keystroke in the middle of the corpus and its undo, applied to a Document
+ * (incremental) or by scanning and parsing the whole source again (full)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBenchmark {
+
+  @Param({ "large", "arithmetic" })
+  public String corpus;
+
+  // A space keeps the lines, a newline moves every line after it
+  @Param({ " ", "\n" })
+  public String typed;
+
+  private String source;
+  private Document document;
+  private int offset;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    source = Corpus.get(corpus);
+    document = new Document(source, Lox.reporter);
+    // Right after the statement in the middle
+    offset = source.indexOf(";\n", source.length() / 2) + 1;
+  }
+
+  @Benchmark
+  public List<Stmt> incremental() {
+    document.edit(offset, 0, typed);
+    return document.edit(offset, typed.length(), "");
+  }
+
+  @Benchmark
+  public List<Stmt> full() {
+    String edited = source.substring(0, offset) + typed + source.substring(offset);
+    new Parser(new Scanner(edited).scanTokens()).parse();
+    return new Parser(new Scanner(source).scanTokens()).parse();
+  }
+}
@@ -0,0 +1,92 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EngineBenchmark
+ * Runs an already parsed program on each execution engine, so only the
+ * execution itself is compared. Compiling for the vm is in PhaseBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+  @Param({ "small", "arithmetic", "strings", "concat" })
+  public String corpus;
+
+  @Param({ "tree", "vm", "node", "closure" })
+  public String engine;
+
+  private List<Stmt> statements;
+  private Chunk chunk;
+  private PrintStream stdout;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    statements = new Parser(new Scanner(Corpus.get(corpus)).scanTokens()).parse();
+    new Resolver(new Environment()).resolve(statements);
+    chunk = new Compiler().compile(statements);
+
+    stdout = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    System.setOut(stdout);
+  }
+
+  // Every run starts from fresh globals, resolving again declares the same
+  // slots the program was compiled with
+  @Benchmark
+  public Object execute() {
+    if (engine.equals("vm")) {
+      VM vm = new VM();
+      new Resolver(vm.globals).resolve(statements);
+      vm.interpret(chunk);
+      return vm;
+    }
+
+    if (engine.equals("node")) {
+      // The nodes specialise while running, so they are built per run
+      NodeInterpreter nodeInterpreter = new NodeInterpreter();
+      new Resolver(nodeInterpreter.globals).resolve(statements);
+      nodeInterpreter.interpret(new NodeBuilder(nodeInterpreter).build(statements));
+      return nodeInterpreter;
+    }
+
+    if (engine.equals("closure")) {
+      // The closures capture their interpreter, so they are compiled per run
+      ClosureInterpreter closureInterpreter = new ClosureInterpreter();
+      new Resolver(closureInterpreter.globals).resolve(statements);
+      closureInterpreter.interpret(statements);
+      return closureInterpreter;
+    }
+
+    Interpreter interpreter = new Interpreter();
+    new Resolver(interpreter.globals).resolve(statements);
+    interpreter.interpret(statements);
+    return interpreter;
+  }
+}
@@ -0,0 +1,30 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * LoxBenchmarks
+ * Entry point of benchmarks.jar. Same arguments as the stock JMH main, but
+ * always attaches the gc profiler so allocation rates are reported next to
+ * throughput.
+ */
+public class LoxBenchmarks {
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    try {
+      new Runner(options).run();
+    } catch (RunnerException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * NumericBenchmark
+ * Evaluates arithmetic expressions on the Interpreter with and without the
+ * unboxed double path. boxed=true clears the numeric flags so every
+ * intermediate result is boxed, compare gc.alloc.rate.norm of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericBenchmark {
+
+  @Param({ "x + 3.14 * (5 - 2)", "(1.5 + 2) * (3 - 4.25) / (5 + 6) - -(7 * 8 - 9 / 10)" })
+  public String expression;
+
+  @Param({ "false", "true" })
+  public boolean boxed;
+
+  private Interpreter interpreter;
+  private Expr expr;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    List<Stmt> statements = new Parser(new Scanner("var x = 42; " + expression + ";").scanTokens()).parse();
+    interpreter = new Interpreter();
+    new Resolver(interpreter.globals).resolve(statements);
+    interpreter.interpret(statements.subList(0, 1));
+
+    expr = ((Stmt.Expression) statements.get(1)).expr;
+    if (boxed) {
+      box(expr);
+    }
+  }
+
+  @Benchmark
+  public Object evaluate() {
+    return interpreter.evaluate(expr);
+  }
+
+  private static void box(Expr expr) {
+    expr.numeric = false;
+    if (expr instanceof Expr.Binary) {
+      box(((Expr.Binary) expr).left);
+      box(((Expr.Binary) expr).right);
+    } else if (expr instanceof Expr.Unary) {
+      box(((Expr.Unary) expr).right);
+    } else if (expr instanceof Expr.Grouping) {
+      box(((Expr.Grouping) expr).expression);
+    }
+  }
+}
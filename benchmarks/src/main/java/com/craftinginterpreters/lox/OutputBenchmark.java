@@ -0,0 +1,65 @@
+package com.craftinginterpreters.lox;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OutputBenchmark
+ * Prints lines to a temporary file through an autoflushing PrintStream, like
+ * System.out, and through a BufferedSink
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+
+  @Param({ "stream", "buffered" })
+  public String sink;
+
+  private Path file;
+  private OutputSink out;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    file = Files.createTempFile("lox-output", ".txt");
+    if (sink.equals("stream")) {
+      out = OutputSink.of(new PrintStream(new FileOutputStream(file.toFile()), true));
+    } else {
+      out = new BufferedSink(Channels.newChannel(new FileOutputStream(file.toFile())), Charset.defaultCharset());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    out.flush();
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public void println() {
+    out.println("The quick brown fox jumps over the lazy dog 3.14");
+  }
+}
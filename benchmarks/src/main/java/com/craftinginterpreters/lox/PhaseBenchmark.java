@@ -0,0 +1,118 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PhaseBenchmark
+ * Times every phase on its own (scan, parse, optimize, resolve, compile,
+ * interpret) and then the whole pipeline through Lox.run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+
+  @Param({ "small", "large", "arithmetic", "strings" })
+  public String corpus;
+
+  private String source;
+  private TokenBuffer tokens;
+  private List<Stmt> statements;
+  private PrintStream stdout;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    source = Corpus.get(corpus);
+    tokens = new Scanner(source).scanTokens();
+    statements = new Parser(tokens).parse();
+    new Resolver(new Environment()).resolve(statements);
+    if (Lox.hadError) {
+      throw new IllegalStateException("Corpus '" + corpus + "' does not parse.");
+    }
+
+    // Scripts print, we only want the cost of producing the output
+    stdout = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    System.setOut(stdout);
+  }
+
+  @Benchmark
+  public TokenBuffer scan() {
+    return new Scanner(source).scanTokens();
+  }
+
+  // Same scan, pulling the characters from a Reader like --stream does
+  @Benchmark
+  public TokenBuffer scanReader() {
+    return new Scanner(new StringReader(source)).scanTokens();
+  }
+
+  @Benchmark
+  public List<Stmt> parse() {
+    return new Parser(tokens).parse();
+  }
+
+  // Scan and parse together, on every core, compare with scan + parse
+  @Benchmark
+  public List<Stmt> parseParallel() {
+    return new ParallelFrontEnd(ForkJoinPool.commonPool()).parse(source, new SymbolTable(), Lox.reporter);
+  }
+
+  @Benchmark
+  public List<Stmt> optimize() {
+    return new Optimizer().optimize(statements);
+  }
+
+  @Benchmark
+  public Environment resolve() {
+    Environment globals = new Environment();
+    new Resolver(globals).resolve(statements);
+    return globals;
+  }
+
+  @Benchmark
+  public Chunk compile() {
+    return new Compiler().compile(statements);
+  }
+
+  // Slots depend on the globals they were resolved against, so a fresh
+  // Interpreter has to resolve again, see resolve() for that part alone
+  @Benchmark
+  public Interpreter interpret() {
+    Interpreter interpreter = new Interpreter();
+    new Resolver(interpreter.globals).resolve(statements);
+    interpreter.interpret(statements);
+    return interpreter;
+  }
+
+  @Benchmark
+  public void run() {
+    Lox.run(source);
+  }
+}
@@ -0,0 +1,71 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * StartupBenchmark
+ * Getting from the bytes of a file to its statements, by scanning and
+ * parsing them (cold) or by loading them from the AstCache (cached), which
+ * includes hashing the source
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupBenchmark {
+
+  @Param({ "small", "large", "arithmetic", "strings" })
+  public String corpus;
+
+  private byte[] source;
+  private Path directory;
+  private AstCache cache;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    source = Corpus.get(corpus).getBytes(StandardCharsets.UTF_8);
+    directory = Files.createTempDirectory("jlox-cache");
+    cache = new AstCache(directory, StandardCharsets.UTF_8);
+    cache.store(source, cold());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public List<Stmt> cold() {
+    return new Parser(new Scanner(new String(source, StandardCharsets.UTF_8)).scanTokens()).parse();
+  }
+
+  @Benchmark
+  public List<Stmt> cached() {
+    return cache.load(source);
+  }
+}
@@ -0,0 +1,520 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AstCache
+ * Parsed scripts on disk, in a compact binary format, named after the
+ * SHA-256 of the format version, the charset the source is decoded with and
+ * the source bytes. A cached file is memory-mapped and decoded instead of
+ * being scanned and parsed again. The same bytes read with another charset,
+ * or by a build that encodes differently, are a miss and never decode into a
+ * wrong AST.
+ *
+ * Layout: magic, format version, the strings (lexemes and string literals,
+ * each one once), then the statements in prefix order. Numbers are varints
+ * except for double literals. Tokens keep their type, lexeme, literal and
+ * line, all that an error message needs.
+ *
+ * The cache is only an optimisation: a file that can't be read or written is
+ * treated as a miss, never as an error.
+ */
+final class AstCache {
+  private static final int MAGIC = 0x4c4f5841; // "LOXA"
+  private static final int VERSION = 3;
+
+  private static final TokenType[] TYPES = TokenType.values();
+
+  // Node tags
+  private static final byte EXPRESSION = 0, PRINT = 1, VAR = 2, FUNCTION = 3, RETURN = 4;
+  private static final byte BINARY = 0, GROUPING = 1, LITERAL = 2, UNARY = 3, VARIABLE = 4, COMMA = 5,
+      TERNARY = 6, CALL = 7;
+  // Value tags
+  private static final byte NIL = 0, TRUE = 1, FALSE = 2, NUMBER = 3, STRING = 4;
+
+  private final Path directory;
+  private final Charset charset;
+
+  /**
+   * @param charset What the sources are decoded with before they are parsed
+   */
+  AstCache(Path directory, Charset charset) {
+    this.directory = directory;
+    this.charset = charset;
+  }
+
+  /**
+   * @return The statements cached for this source, null if there are none
+   */
+  List<Stmt> load(byte[] source) {
+    Path file = directory.resolve(key(source, charset));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | RuntimeException e) {
+      // Corrupt or from another version, it is parsed and stored again
+      return null;
+    }
+  }
+
+  /**
+   * Caches the statements parsed from a source, which must have parsed
+   * without errors
+   */
+  void store(byte[] source, List<Stmt> statements) {
+    try {
+      Files.createDirectories(directory);
+      Path file = directory.resolve(key(source, charset));
+      // Written aside and moved in, so a concurrent run never maps half a file
+      Path temp = Files.createTempFile(directory, "ast", ".tmp");
+      try {
+        Files.write(temp, encode(statements));
+        try {
+          Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      // Read-only or full disk, next run parses again
+    }
+  }
+
+  static String key(byte[] source, Charset charset) {
+    try {
+      MessageDigest sha = MessageDigest.getInstance("SHA-256");
+      sha.update(ByteBuffer.allocate(4).putInt(VERSION).array());
+      sha.update(charset.name().getBytes(StandardCharsets.UTF_8));
+      sha.update((byte) 0);
+      byte[] digest = sha.digest(source);
+      StringBuilder key = new StringBuilder(digest.length * 2 + 4);
+      for (byte b : digest) {
+        key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return key.append(".ast").toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every JVM has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static byte[] encode(List<Stmt> statements) {
+    Encoder encoder = new Encoder();
+    for (Stmt statement : statements) {
+      statement.accept(encoder);
+    }
+
+    Output out = new Output();
+    out.putInt(MAGIC);
+    out.putInt(VERSION);
+    out.putVarint(encoder.strings.size());
+    for (String string : encoder.strings) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      out.putVarint(bytes.length);
+      out.put(bytes, bytes.length);
+    }
+    out.putVarint(statements.size());
+    out.put(encoder.out.bytes, encoder.out.size);
+    return out.toByteArray();
+  }
+
+  static List<Stmt> decode(ByteBuffer in) {
+    if (in.getInt() != MAGIC || in.getInt() != VERSION)
+      throw new IllegalArgumentException("Not a cached AST of this version.");
+    return new Decoder(in).statements();
+  }
+
+  /**
+   * Growable byte array
+   */
+  private static class Output {
+    byte[] bytes = new byte[4096];
+    int size = 0;
+
+    private void ensure(int more) {
+      if (size + more > bytes.length)
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+    }
+
+    void put(byte b) {
+      ensure(1);
+      bytes[size++] = b;
+    }
+
+    void put(byte[] from, int length) {
+      ensure(length);
+      System.arraycopy(from, 0, bytes, size, length);
+      size += length;
+    }
+
+    void putInt(int value) {
+      ensure(4);
+      bytes[size++] = (byte) (value >>> 24);
+      bytes[size++] = (byte) (value >>> 16);
+      bytes[size++] = (byte) (value >>> 8);
+      bytes[size++] = (byte) value;
+    }
+
+    void putLong(long value) {
+      putInt((int) (value >>> 32));
+      putInt((int) value);
+    }
+
+    // 7 bits per byte, high bit set on all but the last
+    void putVarint(int value) {
+      ensure(5);
+      while ((value & ~0x7f) != 0) {
+        bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+
+  private static class Encoder implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    final Output out = new Output();
+    final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    private void string(String string) {
+      Integer index = indexes.get(string);
+      if (index == null) {
+        index = strings.size();
+        strings.add(string);
+        indexes.put(string, index);
+      }
+      out.putVarint(index);
+    }
+
+    private void value(Object value) {
+      if (value == null) {
+        out.put(NIL);
+      } else if (value instanceof Boolean) {
+        out.put((Boolean) value ? TRUE : FALSE);
+      } else if (value instanceof Double) {
+        out.put(NUMBER);
+        out.putLong(Double.doubleToRawLongBits((Double) value));
+      } else {
+        out.put(STRING);
+        string((String) value);
+      }
+    }
+
+    private void token(Token token) {
+      out.put((byte) token.type.ordinal());
+      string(token.lexeme);
+      value(token.literal);
+      out.putVarint(token.line);
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+      out.put(EXPRESSION);
+      out.putVarint(stmt.line);
+      stmt.expr.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+      out.put(PRINT);
+      out.putVarint(stmt.line);
+      stmt.expr.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+      out.put(VAR);
+      out.putVarint(stmt.line);
+      token(stmt.name);
+      if (stmt.initializer == null) {
+        out.put((byte) 0);
+      } else {
+        out.put((byte) 1);
+        stmt.initializer.accept(this);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+      out.put(FUNCTION);
+      out.putVarint(stmt.line);
+      token(stmt.name);
+      out.putVarint(stmt.params.size());
+      for (Token param : stmt.params) {
+        token(param);
+      }
+      out.putVarint(stmt.body.size());
+      for (Stmt statement : stmt.body) {
+        statement.accept(this);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+      out.put(RETURN);
+      out.putVarint(stmt.line);
+      token(stmt.keyword);
+      if (stmt.value == null) {
+        out.put((byte) 0);
+      } else {
+        out.put((byte) 1);
+        stmt.value.accept(this);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      out.put(BINARY);
+      expr.left.accept(this);
+      token(expr.operator);
+      expr.right.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+      out.put(GROUPING);
+      expr.expression.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      out.put(LITERAL);
+      value(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      out.put(UNARY);
+      token(expr.operator);
+      expr.right.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      out.put(VARIABLE);
+      token(expr.name);
+      return null;
+    }
+
+    @Override
+    public Void visitCommaExpr(Expr.Comma expr) {
+      out.put(COMMA);
+      out.putVarint(expr.exprs.size());
+      for (Expr e : expr.exprs) {
+        e.accept(this);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+      out.put(TERNARY);
+      expr.condition.accept(this);
+      expr.then.accept(this);
+      expr.elseThen.accept(this);
+      token(expr.operator);
+      return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+      out.put(CALL);
+      expr.callee.accept(this);
+      token(expr.paren);
+      out.putVarint(expr.arguments.size());
+      for (Expr argument : expr.arguments) {
+        argument.accept(this);
+      }
+      return null;
+    }
+  }
+
+  private static class Decoder {
+    private final ByteBuffer in;
+    private final String[] strings;
+
+    Decoder(ByteBuffer in) {
+      this.in = in;
+      this.strings = new String[count()];
+      byte[] bytes = new byte[64];
+      for (int i = 0; i < strings.length; i++) {
+        int length = count();
+        if (length > bytes.length)
+          bytes = new byte[Math.max(length, bytes.length * 2)];
+        in.get(bytes, 0, length);
+        strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+    }
+
+    List<Stmt> statements() {
+      int count = count();
+      List<Stmt> statements = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        statements.add(statement());
+      }
+      return statements;
+    }
+
+    private int varint() {
+      int value = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = in.get();
+        value |= (b & 0x7f) << shift;
+        if (b >= 0)
+          return value;
+      }
+    }
+
+    /**
+     * Reads how many items or bytes follow, each takes at least a byte so a
+     * count larger than what is left is corrupt, and is not allocated
+     */
+    private int count() {
+      int count = varint();
+      if (count < 0 || count > in.remaining())
+        throw new IllegalArgumentException("Count " + count + " beyond the end of the file.");
+      return count;
+    }
+
+    private Object value() {
+      byte tag = in.get();
+      switch (tag) {
+        case NIL:
+          return null;
+        case TRUE:
+          return true;
+        case FALSE:
+          return false;
+        case NUMBER:
+          return Double.longBitsToDouble(in.getLong());
+        case STRING:
+          return strings[varint()];
+        default:
+          throw new IllegalArgumentException("Unknown value tag " + tag + ".");
+      }
+    }
+
+    private Token token() {
+      TokenType type = TYPES[in.get()];
+      String lexeme = strings[varint()];
+      Object literal = value();
+      return new Token(type, lexeme, literal, varint());
+    }
+
+    private Stmt statement() {
+      byte tag = in.get();
+      int line = varint();
+      Stmt stmt;
+      switch (tag) {
+        case EXPRESSION:
+          stmt = new Stmt.Expression(expression());
+          break;
+        case PRINT:
+          stmt = new Stmt.Print(expression());
+          break;
+        case VAR:
+          Token name = token();
+          stmt = new Stmt.Var(name, in.get() == 0 ? null : expression());
+          break;
+        case FUNCTION: {
+          Token function = token();
+          int count = count();
+          List<Token> params = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            params.add(token());
+          }
+          stmt = new Stmt.Function(function, params, statements());
+          break;
+        }
+        case RETURN:
+          Token keyword = token();
+          stmt = new Stmt.Return(keyword, in.get() == 0 ? null : expression());
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown statement tag " + tag + ".");
+      }
+      stmt.line = line;
+      return stmt;
+    }
+
+    private Expr expression() {
+      byte tag = in.get();
+      switch (tag) {
+        case BINARY: {
+          Expr left = expression();
+          Token operator = token();
+          return new Expr.Binary(left, operator, expression());
+        }
+        case GROUPING:
+          return new Expr.Grouping(expression());
+        case LITERAL:
+          return new Expr.Literal(value());
+        case UNARY: {
+          Token operator = token();
+          return new Expr.Unary(operator, expression());
+        }
+        case VARIABLE:
+          return new Expr.Variable(token());
+        case COMMA: {
+          int count = count();
+          List<Expr> exprs = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            exprs.add(expression());
+          }
+          return new Expr.Comma(exprs);
+        }
+        case TERNARY: {
+          Expr condition = expression();
+          Expr then = expression();
+          Expr elseThen = expression();
+          return new Expr.Ternary(condition, then, elseThen, token());
+        }
+        case CALL: {
+          Expr callee = expression();
+          Token paren = token();
+          int count = count();
+          List<Expr> arguments = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            arguments.add(expression());
+          }
+          return new Expr.Call(callee, paren, arguments);
+        }
+        default:
+          throw new IllegalArgumentException("Unknown expression tag " + tag + ".");
+      }
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.craftinginterpreters.lox;
 
 import com.craftinginterpreters.lox.Expr.Binary;
+import com.craftinginterpreters.lox.Expr.Call;
 import com.craftinginterpreters.lox.Expr.Comma;
 import com.craftinginterpreters.lox.Expr.Grouping;
 import com.craftinginterpreters.lox.Expr.Literal;
@@ -59,6 +60,16 @@ public class AstPrinter implements Expr.Visitor<String> {
     return builder.toString();
   }
 
+  @Override
+  public String visitCallExpr(Call expr) {
+    Expr[] exprs = new Expr[expr.arguments.size() + 1];
+    exprs[0] = expr.callee;
+    for (int i = 0; i < expr.arguments.size(); i++) {
+      exprs[i + 1] = expr.arguments.get(i);
+    }
+    return parenthesize("call", exprs);
+  }
+
   private String parenthesize(String name, Expr... exprs) {
     StringBuilder builder = new StringBuilder();
 
@@ -74,8 +85,7 @@ public class AstPrinter implements Expr.Visitor<String> {
 
   @Override
   public String visitVariableExpr(Variable expr) {
-    // TODO: Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'visitVariableExpr'");
+    return expr.name.lexeme;
   }
 
   // public static void main(String[] args) {
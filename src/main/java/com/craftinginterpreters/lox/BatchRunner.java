@@ -0,0 +1,227 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * BatchRunner
+ * Runs many scripts in one JVM, concurrently, each in its own
+ * LoxEngine.Context so their globals, output and errors stay apart. Results
+ * are printed in file order as they become available, followed by a summary
+ * with the exit code (same meaning as for a single file) and time of every
+ * script.
+ *
+ * Scripts run on virtual threads when the JVM has them (21+), otherwise on a
+ * fixed pool. Either way at most `jobs` scripts run at the same time.
+ */
+final class BatchRunner {
+  // Exit code of a file that couldn't be read, EX_NOINPUT
+  private static final int NO_INPUT = 66;
+  // Exit code of a script that crashed the interpreter, same as a runtime
+  // error, EX_SOFTWARE
+  private static final int CRASHED = 70;
+
+  private final LoxEngine engine = new LoxEngine();
+  private final int jobs;
+
+  BatchRunner(int jobs) {
+    this.jobs = jobs;
+  }
+
+  /**
+   * What running one script produced
+   */
+  private static class Result implements ErrorReporter {
+    final Path path;
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private final PrintStream err = new PrintStream(errors, true);
+    int exitCode = 0;
+    long nanos;
+
+    Result(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public void syntaxError(int line, String where, String message) {
+      err.println(Lox.formatSyntaxError(line, where, message));
+      exitCode = 65;
+    }
+
+    @Override
+    public void runtimeError(int line, String lexeme, String message) {
+      err.println(Lox.formatRuntimeError(line, lexeme, message));
+      exitCode = 70;
+    }
+  }
+
+  /**
+   * Runs every script found and prints their results and the summary
+   *
+   * @param patterns Files, directories (searched for .jlox files) or glob
+   *                 patterns
+   * @return Highest exit code of all the scripts
+   */
+  int run(List<String> patterns) throws IOException {
+    List<Path> files = collect(patterns);
+    long started = System.nanoTime();
+
+    ExecutorService executor = executor();
+    Semaphore running = new Semaphore(jobs);
+    List<Future<Result>> futures = new ArrayList<>(files.size());
+    for (Path file : files) {
+      futures.add(executor.submit(() -> {
+        running.acquire();
+        try {
+          return run(file);
+        } finally {
+          running.release();
+        }
+      }));
+    }
+    executor.shutdown();
+
+    List<Result> results = new ArrayList<>(files.size());
+    for (int i = 0; i < futures.size(); i++) {
+      Result result;
+      try {
+        result = futures.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        executor.shutdownNow();
+        throw new IOException("Interrupted while running scripts.", e);
+      } catch (ExecutionException e) {
+        // Only an Error run(Path) let through gets here
+        result = crashed(new Result(files.get(i)), e.getCause());
+      }
+      results.add(result);
+
+      System.out.println("==> " + result.path + " <==");
+      result.output.writeTo(System.out);
+      System.out.flush();
+      result.errors.writeTo(System.err);
+      System.err.flush();
+    }
+
+    return summary(results, System.nanoTime() - started);
+  }
+
+  private Result run(Path file) {
+    Result result = new Result(file);
+    long start = System.nanoTime();
+    try {
+      String source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+      engine.newContext(new PrintStream(result.output, false), result).run(source);
+    } catch (IOException e) {
+      result.err.println("Cannot read " + file + ": " + e.getMessage());
+      result.exitCode = NO_INPUT;
+    } catch (RuntimeException | StackOverflowError e) {
+      // A bug or a script nested too deep, it only fails this script
+      crashed(result, e);
+    }
+    result.nanos = System.nanoTime() - start;
+    return result;
+  }
+
+  private static Result crashed(Result result, Throwable e) {
+    result.err.println("Crashed: " + e);
+    result.exitCode = CRASHED;
+    return result;
+  }
+
+  private static int summary(List<Result> results, long wall) {
+    int failed = 0;
+    int highest = 0;
+    long total = 0;
+    System.out.println();
+    System.out.println("exit       ms  script");
+    for (Result result : results) {
+      System.out.printf("%4d %8.1f  %s%n", result.exitCode, result.nanos / 1e6, result.path);
+      if (result.exitCode != 0)
+        failed++;
+      highest = Math.max(highest, result.exitCode);
+      total += result.nanos;
+    }
+    System.out.printf("%d scripts, %d failed, %.1f ms wall, %.1f ms in scripts%n", results.size(), failed,
+        wall / 1e6, total / 1e6);
+    return highest;
+  }
+
+  /**
+   * Virtual threads if the JVM has them, looked up reflectively since the
+   * project builds for 17
+   */
+  private ExecutorService executor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(jobs);
+    }
+  }
+
+  /**
+   * Expands the patterns into a sorted list of files without duplicates
+   */
+  static List<Path> collect(List<String> patterns) throws IOException {
+    TreeSet<Path> files = new TreeSet<>();
+    for (String pattern : patterns) {
+      int glob = firstGlobChar(pattern);
+      if (glob == -1) {
+        Path path = Paths.get(pattern);
+        if (Files.isDirectory(path)) {
+          walk(path, FileSystems.getDefault().getPathMatcher("glob:**.jlox"), files);
+        } else {
+          files.add(path.normalize());
+        }
+        continue;
+      }
+
+      // Walk from the directory before the first wildcard
+      int slash = pattern.lastIndexOf('/', glob);
+      Path base = Paths.get(slash == -1 ? "." : pattern.substring(0, slash + 1));
+      PathMatcher matcher = FileSystems.getDefault()
+          .getPathMatcher("glob:" + (slash == -1 ? pattern : pattern.substring(slash + 1)));
+      if (Files.isDirectory(base)) {
+        walk(base, path -> matcher.matches(base.relativize(path)), files);
+      }
+    }
+    return new ArrayList<>(files);
+  }
+
+  private static void walk(Path directory, PathMatcher matcher, TreeSet<Path> files) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.filter(path -> Files.isRegularFile(path) && matcher.matches(path))
+          .forEach(path -> files.add(path.normalize()));
+    }
+  }
+
+  private static int firstGlobChar(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      switch (pattern.charAt(i)) {
+        case '*':
+        case '?':
+        case '[':
+        case '{':
+          return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,320 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * BinaryNode
+ * Binary operators of the node tree. Every operator starts Uninitialized and
+ * on its first execution rewrites itself into the variant for the operand
+ * types it saw, e.g. SubtractNumbers for two doubles. A specialised node only
+ * checks its operands still have those types, if they change it rewrites
+ * itself once more into Generic, which handles everything the way the
+ * Interpreter does.
+ */
+abstract class BinaryNode extends ExprNode {
+  final Token operator;
+  ExprNode left;
+  ExprNode right;
+
+  BinaryNode(Token operator, ExprNode left, ExprNode right) {
+    this.operator = operator;
+    this.left = adopt(left);
+    this.right = adopt(right);
+  }
+
+  /**
+   * Takes over the operator and children of the node being rewritten
+   */
+  BinaryNode(BinaryNode node) {
+    this(node.operator, node.left, node.right);
+  }
+
+  /**
+   * Operation on already evaluated operands, used right after a rewrite so
+   * the operands are not evaluated twice
+   */
+  abstract Object apply(Object left, Object right);
+
+  @Override
+  void replaceChild(Node child, Node replacement) {
+    if (left == child) {
+      left = (ExprNode) replacement;
+    } else if (right == child) {
+      right = (ExprNode) replacement;
+    } else {
+      throw notAChild(child);
+    }
+  }
+
+  Object generalize(Object left, Object right) {
+    if (replacedBy != null)
+      return ((BinaryNode) replacedBy).apply(left, right);
+    return replace(new Generic(this)).apply(left, right);
+  }
+
+  static final class Uninitialized extends BinaryNode {
+    Uninitialized(Token operator, ExprNode left, ExprNode right) {
+      super(operator, left, right);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (replacedBy != null)
+        return ((BinaryNode) replacedBy).apply(left, right);
+      return replace(specialize(left, right)).apply(left, right);
+    }
+
+    private BinaryNode specialize(Object left, Object right) {
+      boolean numbers = left instanceof Double && right instanceof Double;
+      switch (operator.type) {
+        case MINUS:
+          return numbers ? new SubtractNumbers(this) : new Generic(this);
+        case STAR:
+          return numbers ? new MultiplyNumbers(this) : new Generic(this);
+        case SLASH:
+          return numbers ? new DivideNumbers(this) : new Generic(this);
+        case PLUS:
+          if (numbers)
+            return new AddNumbers(this);
+          if (left instanceof CharSequence && right instanceof CharSequence)
+            return new ConcatStrings(this);
+          if (left instanceof CharSequence && right instanceof Double)
+            return new ConcatStringNumber(this);
+          if (left instanceof Double && right instanceof CharSequence)
+            return new ConcatNumberString(this);
+          return new Generic(this);
+        case GREATER:
+          return numbers ? new GreaterNumbers(this) : new Generic(this);
+        case GREATER_EQUAL:
+          return numbers ? new GreaterEqualNumbers(this) : new Generic(this);
+        case LESS:
+          return numbers ? new LessNumbers(this) : new Generic(this);
+        case LESS_EQUAL:
+          return numbers ? new LessEqualNumbers(this) : new Generic(this);
+        default:
+          return new Generic(this);
+      }
+    }
+  }
+
+  static final class Generic extends BinaryNode {
+    Generic(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      return Interpreter.binary(operator, left, right);
+    }
+  }
+
+  static final class AddNumbers extends BinaryNode {
+    AddNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double)
+        return (double) left + (double) right;
+      return generalize(left, right);
+    }
+  }
+
+  static final class SubtractNumbers extends BinaryNode {
+    SubtractNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double)
+        return (double) left - (double) right;
+      return generalize(left, right);
+    }
+  }
+
+  static final class MultiplyNumbers extends BinaryNode {
+    MultiplyNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double)
+        return (double) left * (double) right;
+      return generalize(left, right);
+    }
+  }
+
+  static final class DivideNumbers extends BinaryNode {
+    DivideNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double) {
+        if ((double) right == 0) {
+          throw new RuntimeError(operator, "You are trying to divide by zero.");
+        }
+        return (double) left / (double) right;
+      }
+      return generalize(left, right);
+    }
+  }
+
+  static final class ConcatStrings extends BinaryNode {
+    ConcatStrings(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof CharSequence && right instanceof CharSequence)
+        return Rope.concat(operator, (CharSequence) left, (CharSequence) right);
+      return generalize(left, right);
+    }
+  }
+
+  static final class ConcatStringNumber extends BinaryNode {
+    ConcatStringNumber(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof CharSequence && right instanceof Double)
+        return Rope.concat(operator, (CharSequence) left, Interpreter.stringify(right));
+      return generalize(left, right);
+    }
+  }
+
+  static final class ConcatNumberString extends BinaryNode {
+    ConcatNumberString(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof CharSequence)
+        return Rope.concat(operator, Interpreter.stringify(left), (CharSequence) right);
+      return generalize(left, right);
+    }
+  }
+
+  static final class GreaterNumbers extends BinaryNode {
+    GreaterNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double)
+        return (double) left > (double) right;
+      return generalize(left, right);
+    }
+  }
+
+  static final class GreaterEqualNumbers extends BinaryNode {
+    GreaterEqualNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double)
+        return (double) left >= (double) right;
+      return generalize(left, right);
+    }
+  }
+
+  static final class LessNumbers extends BinaryNode {
+    LessNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double)
+        return (double) left < (double) right;
+      return generalize(left, right);
+    }
+  }
+
+  static final class LessEqualNumbers extends BinaryNode {
+    LessEqualNumbers(BinaryNode node) {
+      super(node);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return apply(left.execute(environment), right.execute(environment));
+    }
+
+    @Override
+    Object apply(Object left, Object right) {
+      if (left instanceof Double && right instanceof Double)
+        return (double) left <= (double) right;
+      return generalize(left, right);
+    }
+  }
+}
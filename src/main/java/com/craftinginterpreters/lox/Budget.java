@@ -0,0 +1,215 @@
+package com.craftinginterpreters.lox;
+
+import java.time.Duration;
+
+/**
+ * Budget
+ * Limits on one execution of a script: how many statements it may execute,
+ * how long it may run, how much memory its values may take and a handle to
+ * cancel it from another thread. The Interpreter is given statements in
+ * batches and only asks for the next batch, which is when the clock and the
+ * cancel flag are looked at, after spending the last one, so a statement
+ * costs a decrement and a compare.
+ *
+ * When a limit is hit, the statement about to run throws a BudgetExceeded
+ * with its line, which is reported like any runtime error, and
+ * isExceeded() tells that this is why the run stopped.
+ *
+ * Memory is an estimate of what the script holds: every string and number
+ * in a variable or a parameter counts, at about the size the JVM gives it,
+ * until it is replaced or its call returns. A string counts with all its
+ * characters, as it will be when printed flattens it, even while it is a
+ * Rope sharing them, and once per variable that holds it. A string made by
+ * concatenation is checked when it is made, so one too big for what is left
+ * is stopped before it is stored or printed. peakBytes() is the most it
+ * ever was, to size what runs scripts.
+ *
+ * Not reusable: the timeout counts from the first statement, and what was
+ * spent stays spent, across every run it is given to.
+ */
+public final class Budget {
+  // Statements between two looks at the clock and the cancel flag
+  private static final long CHECK_EVERY = 1024;
+  // Estimated sizes of values: a boxed double, and a String without its
+  // characters, which take a byte each
+  private static final long NUMBER = 16;
+  private static final long STRING = 40;
+
+  private final long statements;
+  private final long timeout;
+  private final long bytes;
+
+  // Estimated bytes held by variables now, and the most they ever were
+  private long held = 0;
+  private long peak = 0;
+
+  private long left;
+  private long deadline = 0;
+  private volatile boolean cancelled = false;
+  private volatile boolean exceeded = false;
+
+  /**
+   * @param statements Most statements to execute, 0 or less for no limit
+   * @param timeout    Longest time to run, null for no limit
+   */
+  public Budget(long statements, Duration timeout) {
+    this(statements, timeout, 0);
+  }
+
+  /**
+   * @param statements Most statements to execute, 0 or less for no limit
+   * @param timeout    Longest time to run, null for no limit
+   * @param bytes      Most memory the values may take, 0 or less for no
+   *                   limit
+   */
+  public Budget(long statements, Duration timeout, long bytes) {
+    this.statements = statements > 0 ? statements : Long.MAX_VALUE;
+    this.timeout = timeout == null ? 0 : Math.max(timeout.toNanos(), 1);
+    this.bytes = bytes > 0 ? bytes : Long.MAX_VALUE;
+    this.left = this.statements;
+  }
+
+  /**
+   * No limits, to only measure peakBytes()
+   */
+  public static Budget unlimited() {
+    return new Budget(0, null, 0);
+  }
+
+  /**
+   * Stops the run at its next check, from any thread
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @return Whether a limit or cancel stopped a run
+   */
+  public boolean isExceeded() {
+    return exceeded;
+  }
+
+  /**
+   * @return Most bytes the values of the runs held at once, estimated
+   */
+  public long peakBytes() {
+    return peak;
+  }
+
+  /**
+   * Checks the limits before a statement runs and gives the next batch
+   *
+   * @return How many statements may run after this one before asking again
+   * @throws BudgetExceeded if this statement may not run
+   */
+  long next(Stmt stmt) {
+    if (timeout != 0 && deadline == 0)
+      deadline = System.nanoTime() + timeout;
+
+    String reason = null;
+    if (cancelled) {
+      reason = "Execution cancelled.";
+    } else if (left == 0) {
+      reason = "Statement budget of " + statements + " exhausted.";
+    } else if (timeout != 0 && System.nanoTime() - deadline >= 0) {
+      reason = "Deadline of " + Duration.ofNanos(timeout).toMillis() + " ms exceeded.";
+    }
+    if (reason != null) {
+      exceeded = true;
+      throw new BudgetExceeded(stmt, reason);
+    }
+
+    long batch = Math.min(CHECK_EVERY, left);
+    left -= batch;
+    return batch - 1;
+  }
+
+  /**
+   * Gives back what is left of a batch when a run ends
+   */
+  void refund(long unused) {
+    if (unused > 0)
+      left += unused;
+  }
+
+  /**
+   * Checks a string just made by the operator fits with what is held
+   */
+  void allocate(Token operator, Object value) {
+    long size = size(value);
+    if (held + size > bytes)
+      exceed(operator);
+    peak = Math.max(peak, held + size);
+  }
+
+  /**
+   * Counts a value stored where another one was
+   */
+  void store(Token name, Object old, Object value) {
+    // What runs before held can be released by this one, it never counts
+    // below nothing
+    long now = Math.max(held - size(old), 0) + size(value);
+    if (now > bytes)
+      exceed(name);
+    held = now;
+    peak = Math.max(peak, held);
+  }
+
+  /**
+   * Releases the values of a frame whose call is over
+   */
+  void release(Environment frame, int size) {
+    for (int i = 0; i < size; i++) {
+      held -= size(frame.value(i));
+    }
+    held = Math.max(held, 0);
+  }
+
+  private void exceed(Token where) {
+    exceeded = true;
+    throw new BudgetExceeded(where, "Heap quota of " + bytes + " bytes exceeded.");
+  }
+
+  static long size(Object value) {
+    if (value instanceof CharSequence)
+      return STRING + ((CharSequence) value).length();
+    if (value instanceof Double)
+      return NUMBER;
+    // nil, booleans and functions are shared
+    return 0;
+  }
+
+  /**
+   * BudgetExceeded
+   * Thrown before the statement that would go over the budget, or by the
+   * operator or variable whose value would
+   */
+  static final class BudgetExceeded extends RuntimeError {
+    private static final long serialVersionUID = 1L;
+
+    BudgetExceeded(Stmt stmt, String message) {
+      super(new Token(TokenType.EOF, describe(stmt), null, stmt.line), message);
+    }
+
+    BudgetExceeded(Token where, String message) {
+      super(where, message);
+    }
+
+    private static String describe(Stmt stmt) {
+      if (stmt instanceof Stmt.Print)
+        return "print";
+      if (stmt instanceof Stmt.Var)
+        return ((Stmt.Var) stmt).name.lexeme;
+      if (stmt instanceof Stmt.Function)
+        return ((Stmt.Function) stmt).name.lexeme;
+      if (stmt instanceof Stmt.Return)
+        return "return";
+      return "expression";
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.craftinginterpreters.lox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BufferedSink
+ * Encodes printed lines straight into a large byte buffer and writes it to a
+ * channel when it is full, when the line at its start has waited more than
+ * MAX_DELAY (checked on the next print) or when flushed. Nothing is locked
+ * or flushed per line, unlike System.out.
+ *
+ * Like a PrintStream, it never throws: once a write fails (e.g. the pipe was
+ * closed) the rest of the output is dropped.
+ */
+final class BufferedSink implements OutputSink {
+  private static final int CAPACITY = 64 * 1024;
+  private static final long MAX_DELAY = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final WritableByteChannel channel;
+  private final CharsetEncoder encoder;
+  private final byte[] newline;
+  // Array backed on both sides, the encoders' fast path
+  private final ByteBuffer buffer = ByteBuffer.allocate(CAPACITY);
+  private char[] chars = new char[256];
+  // nanoTime of the first line in the buffer
+  private long oldest;
+  private boolean failed = false;
+
+  BufferedSink(WritableByteChannel channel, Charset charset) {
+    this.channel = channel;
+    this.encoder = charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.newline = System.lineSeparator().getBytes(charset);
+  }
+
+  /**
+   * Writes to the process' standard output, bypassing System.out
+   */
+  static BufferedSink stdout() {
+    return new BufferedSink(new FileOutputStream(FileDescriptor.out).getChannel(), Charset.defaultCharset());
+  }
+
+  /**
+   * Writes to a file through a FileChannel, replacing what it had
+   */
+  static BufferedSink open(Path path) throws IOException {
+    return new BufferedSink(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING), Charset.defaultCharset());
+  }
+
+  @Override
+  public void println(String text) {
+    if (buffer.position() == 0)
+      oldest = System.nanoTime();
+
+    int length = text.length();
+    if (length > chars.length)
+      chars = new char[Math.max(length, chars.length * 2)];
+    text.getChars(0, length, chars, 0);
+    CharBuffer in = CharBuffer.wrap(chars, 0, length);
+
+    long bytes = newline.length;
+    encoder.reset();
+    for (;;) {
+      int before = buffer.position();
+      CoderResult result = encoder.encode(in, buffer, true);
+      bytes += buffer.position() - before;
+      if (!result.isOverflow())
+        break;
+      drain();
+    }
+    for (;;) {
+      int before = buffer.position();
+      CoderResult result = encoder.flush(buffer);
+      bytes += buffer.position() - before;
+      if (!result.isOverflow())
+        break;
+      drain();
+    }
+    if (buffer.remaining() < newline.length)
+      drain();
+    buffer.put(newline);
+    Telemetry.printBytes.add(bytes);
+
+    if (buffer.remaining() == 0 || System.nanoTime() - oldest > MAX_DELAY)
+      drain();
+  }
+
+  @Override
+  public void flush() {
+    drain();
+  }
+
+  private void drain() {
+    buffer.flip();
+    try {
+      while (!failed && buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      failed = true;
+    }
+    buffer.clear();
+    oldest = System.nanoTime();
+  }
+}
@@ -0,0 +1,71 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chunk
+ * Compiled program for the VM: the opcode bytes, the constant pool and a line
+ * table with the source line of every byte.
+ */
+class Chunk {
+  byte[] code = new byte[256];
+  int[] lines = new int[256];
+  int count = 0;
+
+  Object[] constants = new Object[64];
+  int constantCount = 0;
+
+  // Stack slots the VM needs to run this chunk
+  int maxStack = 0;
+
+  // Numbers and strings are deduplicated, tokens are unique anyway
+  private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+  void write(byte b, int line) {
+    if (count == code.length) {
+      code = Arrays.copyOf(code, count * 2);
+      lines = Arrays.copyOf(lines, count * 2);
+    }
+    code[count] = b;
+    lines[count] = line;
+    count++;
+  }
+
+  void writeU24(int operand, int line) {
+    if (operand > 0xFFFFFF) {
+      throw new IllegalStateException("Too many constants in one chunk.");
+    }
+    write((byte) (operand >>> 16), line);
+    write((byte) (operand >>> 8), line);
+    write((byte) operand, line);
+  }
+
+  /**
+   * Sets an operand written before, for jumps forward
+   */
+  void patchU24(int offset, int operand) {
+    if (operand > 0xFFFFFF) {
+      throw new IllegalStateException("Too much code in one chunk.");
+    }
+    code[offset] = (byte) (operand >>> 16);
+    code[offset + 1] = (byte) (operand >>> 8);
+    code[offset + 2] = (byte) operand;
+  }
+
+  int addConstant(Object value) {
+    if (value instanceof Double || value instanceof String) {
+      Integer index = constantIndex.get(value);
+      if (index != null)
+        return index;
+      constantIndex.put(value, constantCount);
+    }
+
+    if (constantCount == constants.length) {
+      constants = Arrays.copyOf(constants, constantCount * 2);
+    }
+    constants[constantCount] = value;
+    return constantCount++;
+  }
+}
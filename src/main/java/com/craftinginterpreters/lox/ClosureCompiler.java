@@ -0,0 +1,397 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.craftinginterpreters.lox.Expr.Binary;
+import com.craftinginterpreters.lox.Expr.Call;
+import com.craftinginterpreters.lox.Expr.Comma;
+import com.craftinginterpreters.lox.Expr.Grouping;
+import com.craftinginterpreters.lox.Expr.Literal;
+import com.craftinginterpreters.lox.Expr.Ternary;
+import com.craftinginterpreters.lox.Expr.Unary;
+import com.craftinginterpreters.lox.Expr.Variable;
+
+/**
+ * ClosureCompiler
+ * Turns resolved statements into closures once, each capturing the closures
+ * of its children and what its operator does, so running a statement is a
+ * chain of direct calls: no visitor dispatch and no switch on the operator
+ * type. Numeric expressions get closures that return raw doubles, like the
+ * Interpreter's unboxed path, and only the closure at the top of a numeric
+ * expression boxes.
+ *
+ * Errors, their tokens and the order operands are evaluated in are the same
+ * as on the Interpreter.
+ */
+final class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Closure>, Stmt.Visitor<ClosureCompiler.Action> {
+
+  interface Closure {
+    Object evaluate(Environment environment);
+  }
+
+  interface NumberClosure {
+    double evaluate(Environment environment);
+  }
+
+  interface Action {
+    void execute(Environment environment);
+  }
+
+  /**
+   * Value of a function declaration, with its compiled body
+   */
+  static final class Function {
+    final Stmt.Function declaration;
+    final int arity;
+    final Closure body;
+
+    Function(Stmt.Function declaration, Closure body) {
+      this.declaration = declaration;
+      this.arity = declaration.params.size();
+      this.body = body;
+    }
+
+    @Override
+    public String toString() {
+      return "<fn " + declaration.name.lexeme + ">";
+    }
+  }
+
+  private final ClosureInterpreter runtime;
+
+  ClosureCompiler(ClosureInterpreter runtime) {
+    this.runtime = runtime;
+  }
+
+  List<Action> compile(List<Stmt> statements) {
+    List<Action> actions = new ArrayList<>(statements.size());
+    for (Stmt statement : statements) {
+      actions.add(statement.accept(this));
+    }
+    return actions;
+  }
+
+  private Closure compile(Expr expr) {
+    return expr.accept(this);
+  }
+
+  // Statements
+
+  @Override
+  public Action visitExpressionStmt(Stmt.Expression stmt) {
+    Closure expr = compile(stmt.expr);
+    return environment -> expr.evaluate(environment);
+  }
+
+  @Override
+  public Action visitPrintStmt(Stmt.Print stmt) {
+    Closure expr = compile(stmt.expr);
+    OutputSink out = runtime.out;
+    return environment -> out.println(Interpreter.stringify(expr.evaluate(environment)));
+  }
+
+  @Override
+  public Action visitVarStmt(Stmt.Var stmt) {
+    Closure initializer = stmt.initializer == null ? environment -> null : compile(stmt.initializer);
+    int slot = stmt.slot;
+    if (slot != -1) {
+      return environment -> environment.define(slot, initializer.evaluate(environment));
+    }
+    String name = stmt.name.lexeme;
+    return environment -> environment.define(name, initializer.evaluate(environment));
+  }
+
+  @Override
+  public Action visitFunctionStmt(Stmt.Function stmt) {
+    Function function = new Function(stmt, body(stmt.body));
+    int slot = stmt.slot;
+    if (slot != -1) {
+      return environment -> environment.define(slot, function);
+    }
+    String name = stmt.name.lexeme;
+    return environment -> environment.define(name, function);
+  }
+
+  /**
+   * A body runs its statements up to the first return, whose value is the
+   * value of the call. There are no blocks, so where that return is is known
+   * now and nothing has to unwind at runtime.
+   */
+  private Closure body(List<Stmt> statements) {
+    List<Action> actions = new ArrayList<>();
+    Closure result = environment -> null;
+    for (Stmt statement : statements) {
+      if (statement instanceof Stmt.Return) {
+        Expr value = ((Stmt.Return) statement).value;
+        if (value != null)
+          result = compile(value);
+        break;
+      }
+      actions.add(statement.accept(this));
+    }
+
+    if (actions.isEmpty())
+      return result;
+    Action[] before = actions.toArray(new Action[0]);
+    Closure value = result;
+    return frame -> {
+      for (Action action : before) {
+        action.execute(frame);
+      }
+      return value.evaluate(frame);
+    };
+  }
+
+  @Override
+  public Action visitReturnStmt(Stmt.Return stmt) {
+    // Only in function bodies, which body() compiles
+    throw new IllegalStateException("Return outside of a function.");
+  }
+
+  // Expressions
+
+  @Override
+  public Closure visitLiteralExpr(Literal expr) {
+    Object value = expr.value;
+    return environment -> value;
+  }
+
+  @Override
+  public Closure visitGroupingExpr(Grouping expr) {
+    // Groupings only matter to the parser
+    return compile(expr.expression);
+  }
+
+  @Override
+  public Closure visitVariableExpr(Variable expr) {
+    Token name = expr.name;
+    int depth = expr.depth;
+    int slot = expr.slot;
+    if (slot == -1)
+      return environment -> environment.get(name);
+    if (depth == 0)
+      return environment -> environment.getAt(0, slot, name);
+    return environment -> environment.getAt(depth, slot, name);
+  }
+
+  @Override
+  public Closure visitUnaryExpr(Unary expr) {
+    if (expr.numeric)
+      return box(number(expr));
+
+    Closure right = compile(expr.right);
+    return environment -> !Interpreter.isTruthy(right.evaluate(environment));
+  }
+
+  @Override
+  public Closure visitBinaryExpr(Binary expr) {
+    if (expr.numeric)
+      return box(number(expr));
+
+    Token operator = expr.operator;
+    if (expr.left.numeric && expr.right.numeric) {
+      NumberClosure left = number(expr.left);
+      NumberClosure right = number(expr.right);
+      switch (operator.type) {
+        case GREATER:
+          return environment -> left.evaluate(environment) > right.evaluate(environment);
+        case GREATER_EQUAL:
+          return environment -> left.evaluate(environment) >= right.evaluate(environment);
+        case LESS:
+          return environment -> left.evaluate(environment) < right.evaluate(environment);
+        case LESS_EQUAL:
+          return environment -> left.evaluate(environment) <= right.evaluate(environment);
+        default:
+          break;
+      }
+    }
+
+    Closure left = compile(expr.left);
+    Closure right = compile(expr.right);
+    switch (operator.type) {
+      case PLUS:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          if (a instanceof Double && b instanceof Double)
+            return (double) a + (double) b;
+          if ((a instanceof CharSequence || a instanceof Double) && (b instanceof CharSequence || b instanceof Double))
+            return Rope.concat(operator, a, b);
+          throw new RuntimeError(operator, "The operands must be numbers or strings");
+        };
+      case GREATER:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          return Interpreter.magnitude(operator, a) > Interpreter.magnitude(operator, b);
+        };
+      case GREATER_EQUAL:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          return Interpreter.magnitude(operator, a) >= Interpreter.magnitude(operator, b);
+        };
+      case LESS:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          return Interpreter.magnitude(operator, a) < Interpreter.magnitude(operator, b);
+        };
+      case LESS_EQUAL:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          return Interpreter.magnitude(operator, a) <= Interpreter.magnitude(operator, b);
+        };
+      case EQUAL_EQUAL:
+        return environment -> Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+      case BANG_EQUAL:
+        return environment -> !Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+      default:
+        throw new IllegalArgumentException("Unknown operator " + operator.lexeme);
+    }
+  }
+
+  private static Closure box(NumberClosure number) {
+    return environment -> number.evaluate(environment);
+  }
+
+  /**
+   * Closure of an expression with numeric set
+   */
+  private NumberClosure number(Expr expr) {
+    if (expr instanceof Literal) {
+      double value = (double) ((Literal) expr).value;
+      return environment -> value;
+    }
+    if (expr instanceof Grouping)
+      return number(((Grouping) expr).expression);
+    if (expr instanceof Unary) {
+      Unary unary = (Unary) expr;
+      if (unary.right.numeric) {
+        NumberClosure right = number(unary.right);
+        return environment -> -right.evaluate(environment);
+      }
+      Closure right = compile(unary.right);
+      Token operator = unary.operator;
+      return environment -> {
+        Object value = right.evaluate(environment);
+        Interpreter.checkNumberOperand(operator, value);
+        return -(double) value;
+      };
+    }
+
+    Binary binary = (Binary) expr;
+    Token operator = binary.operator;
+    if (binary.left.numeric && binary.right.numeric) {
+      NumberClosure left = number(binary.left);
+      NumberClosure right = number(binary.right);
+      switch (operator.type) {
+        case MINUS:
+          return environment -> left.evaluate(environment) - right.evaluate(environment);
+        case STAR:
+          return environment -> left.evaluate(environment) * right.evaluate(environment);
+        case SLASH:
+          return environment -> {
+            double a = left.evaluate(environment);
+            double b = right.evaluate(environment);
+            if (b == 0)
+              throw new RuntimeError(operator, "You are trying to divide by zero.");
+            return a / b;
+          };
+        default:
+          return environment -> left.evaluate(environment) + right.evaluate(environment);
+      }
+    }
+
+    // Both operands are evaluated before either is checked, like the
+    // Interpreter does. Only -, * and / get here, a numeric + has numeric
+    // operands.
+    Closure left = compile(binary.left);
+    Closure right = compile(binary.right);
+    switch (operator.type) {
+      case MINUS:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a - (double) b;
+        };
+      case STAR:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a * (double) b;
+        };
+      default:
+        return environment -> {
+          Object a = left.evaluate(environment);
+          Object b = right.evaluate(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          if ((double) b == 0)
+            throw new RuntimeError(operator, "You are trying to divide by zero.");
+          return (double) a / (double) b;
+        };
+    }
+  }
+
+  @Override
+  public Closure visitCommaExpr(Comma expr) {
+    Closure[] exprs = new Closure[expr.exprs.size()];
+    for (int i = 0; i < exprs.length; i++) {
+      exprs[i] = compile(expr.exprs.get(i));
+    }
+    return environment -> {
+      Object value = null;
+      for (Closure e : exprs) {
+        value = e.evaluate(environment);
+      }
+      return value;
+    };
+  }
+
+  @Override
+  public Closure visitTernaryExpr(Ternary expr) {
+    Closure condition = compile(expr.condition);
+    Closure then = compile(expr.then);
+    Closure elseThen = compile(expr.elseThen);
+    return environment -> Interpreter.isTruthy(condition.evaluate(environment)) ? then.evaluate(environment)
+        : elseThen.evaluate(environment);
+  }
+
+  @Override
+  public Closure visitCallExpr(Call expr) {
+    Closure callee = compile(expr.callee);
+    Closure[] arguments = new Closure[expr.arguments.size()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = compile(expr.arguments.get(i));
+    }
+    Token paren = expr.paren;
+    ClosureInterpreter runtime = this.runtime;
+    return environment -> {
+      Object value = callee.evaluate(environment);
+      if (!(value instanceof Function))
+        throw new RuntimeError(paren, "Can only call functions.");
+      Function function = (Function) value;
+      if (function.arity != arguments.length) {
+        throw new RuntimeError(paren,
+            "Expected " + function.arity + " arguments but got " + arguments.length + ".");
+      }
+
+      int size = function.declaration.frameSize;
+      Environment frame = runtime.enter(size);
+      try {
+        for (int i = 0; i < arguments.length; i++) {
+          frame.define(i, arguments[i].evaluate(environment));
+        }
+        return function.body.evaluate(frame);
+      } catch (StackOverflowError e) {
+        throw new RuntimeError(paren, "Stack overflow.");
+      } finally {
+        runtime.exit(frame, size);
+      }
+    };
+  }
+}
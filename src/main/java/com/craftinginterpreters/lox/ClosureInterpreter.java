@@ -0,0 +1,81 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ClosureInterpreter
+ * Runs statements compiled by a ClosureCompiler, and keeps what the
+ * compiled closures share while they run: the globals, where prints go and
+ * the pool of call frames.
+ */
+public class ClosureInterpreter {
+
+  final Environment globals;
+  final OutputSink out;
+  private final ErrorReporter reporter;
+
+  // Call frames, indexed by the number of calls in progress, reused like the
+  // Interpreter's
+  private Environment[] frames = new Environment[16];
+  private int calls = 0;
+
+  ClosureInterpreter() {
+    this(new Environment(), OutputSink.of(null), Lox.reporter);
+  }
+
+  ClosureInterpreter(Environment globals, OutputSink out, ErrorReporter reporter) {
+    this.globals = globals;
+    this.out = out;
+    this.reporter = reporter;
+  }
+
+  /**
+   * Compiles and runs resolved statements
+   *
+   * @return false if a runtime error stopped them
+   */
+  boolean interpret(List<Stmt> statements) {
+    return run(new ClosureCompiler(this).compile(statements));
+  }
+
+  boolean run(List<ClosureCompiler.Action> actions) {
+    Telemetry.InterpretEvent event = Telemetry.beginInterpret();
+    int executed = 0;
+    try {
+      for (ClosureCompiler.Action action : actions) {
+        action.execute(globals);
+        executed++;
+      }
+      return true;
+    } catch (RuntimeError e) {
+      Telemetry.runtimeErrors.increment();
+      out.flush();
+      reporter.runtimeError(e.token.line, e.token.lexeme, e.getMessage());
+      return false;
+    } finally {
+      Telemetry.interpreted(event, "closure", executed);
+    }
+  }
+
+  /**
+   * Frame for a new call, the calls in its arguments take the frames above
+   */
+  Environment enter(int size) {
+    if (calls == frames.length) {
+      frames = Arrays.copyOf(frames, calls * 2);
+    }
+    Environment frame = frames[calls];
+    if (frame == null || frame.capacity() < size) {
+      frame = new Environment(globals, Math.max(size, 8));
+      frames[calls] = frame;
+    }
+    calls++;
+    return frame;
+  }
+
+  void exit(Environment frame, int size) {
+    calls--;
+    frame.clear(size);
+  }
+}
@@ -0,0 +1,331 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+import com.craftinginterpreters.lox.Expr.Binary;
+import com.craftinginterpreters.lox.Expr.Call;
+import com.craftinginterpreters.lox.Expr.Comma;
+import com.craftinginterpreters.lox.Expr.Grouping;
+import com.craftinginterpreters.lox.Expr.Literal;
+import com.craftinginterpreters.lox.Expr.Ternary;
+import com.craftinginterpreters.lox.Expr.Unary;
+import com.craftinginterpreters.lox.Expr.Variable;
+
+/**
+ * Compiler
+ * Lowers resolved statements into a Chunk for the VM. Every function body
+ * gets a Chunk of its own, whose parameters and locals are slots at the
+ * bottom of the call's stack.
+ */
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+  /**
+   * Value of a function declaration, with its compiled body
+   */
+  static final class Function {
+    final Stmt.Function declaration;
+    final int arity;
+    final Chunk chunk;
+
+    Function(Stmt.Function declaration, Chunk chunk) {
+      this.declaration = declaration;
+      this.arity = declaration.params.size();
+      this.chunk = chunk;
+    }
+
+    @Override
+    public String toString() {
+      return "<fn " + declaration.name.lexeme + ">";
+    }
+  }
+
+  private final Chunk chunk = new Chunk();
+  // Whether this compiles a function body, whose variables are locals
+  private final boolean body;
+  // Line of the last token seen, literals don't carry one
+  private int line = 1;
+  private int stackDepth = 0;
+
+  Compiler() {
+    this(false);
+  }
+
+  private Compiler(boolean body) {
+    this.body = body;
+  }
+
+  Chunk compile(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      statement.accept(this);
+    }
+    emit(OpCode.RETURN);
+    return chunk;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    compile(stmt.expr);
+    emit(OpCode.POP);
+    pop(1);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    compile(stmt.expr);
+    emit(OpCode.PRINT);
+    pop(1);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    line = stmt.name.line;
+    emit(OpCode.CONSTANT);
+    chunk.writeU24(chunk.addConstant(new Function(stmt, body(stmt))), line);
+    push();
+    define(stmt.name, stmt.slot);
+    return null;
+  }
+
+  /**
+   * Compiles a body up to its first return, whose value is the value of the
+   * call. There are no blocks, so the statements after it never run.
+   */
+  private static Chunk body(Stmt.Function declaration) {
+    Compiler compiler = new Compiler(true);
+    compiler.line = declaration.name.line;
+    Expr value = null;
+    for (Stmt statement : declaration.body) {
+      if (statement instanceof Stmt.Return) {
+        compiler.line = statement.line;
+        value = ((Stmt.Return) statement).value;
+        break;
+      }
+      statement.accept(compiler);
+    }
+
+    if (value != null) {
+      compiler.compile(value);
+    } else {
+      compiler.emit(OpCode.NIL);
+      compiler.push();
+    }
+    compiler.emit(OpCode.RETURN_VALUE);
+    return compiler.chunk;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    // Only in function bodies, which body() compiles
+    throw new IllegalStateException("Return outside of a function.");
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    line = stmt.name.line;
+    if (stmt.initializer != null) {
+      compile(stmt.initializer);
+    } else {
+      emit(OpCode.NIL);
+      push();
+    }
+    define(stmt.name, stmt.slot);
+    return null;
+  }
+
+  /**
+   * Stores the value on top of the stack in the variable a declaration
+   * resolved to
+   */
+  private void define(Token name, int slot) {
+    if (body) {
+      emit(OpCode.DEFINE_LOCAL);
+      chunk.writeU24(slot, line);
+    } else if (slot != -1) {
+      emit(OpCode.DEFINE_GLOBAL);
+      chunk.writeU24(slot, line);
+    } else {
+      emit(OpCode.DEFINE_GLOBAL_NAMED);
+      chunk.writeU24(chunk.addConstant(name.lexeme), line);
+    }
+    pop(1);
+  }
+
+  @Override
+  public Void visitBinaryExpr(Binary expr) {
+    compile(expr.left);
+    compile(expr.right);
+    line = expr.operator.line;
+
+    switch (expr.operator.type) {
+      case EQUAL_EQUAL:
+        emit(OpCode.EQUAL);
+        break;
+      case BANG_EQUAL:
+        emit(OpCode.NOT_EQUAL);
+        break;
+      case GREATER:
+        emitWithToken(OpCode.GREATER, expr.operator);
+        break;
+      case GREATER_EQUAL:
+        emitWithToken(OpCode.GREATER_EQUAL, expr.operator);
+        break;
+      case LESS:
+        emitWithToken(OpCode.LESS, expr.operator);
+        break;
+      case LESS_EQUAL:
+        emitWithToken(OpCode.LESS_EQUAL, expr.operator);
+        break;
+      case PLUS:
+        emitWithToken(OpCode.ADD, expr.operator);
+        break;
+      case MINUS:
+        emitWithToken(OpCode.SUBTRACT, expr.operator);
+        break;
+      case STAR:
+        emitWithToken(OpCode.MULTIPLY, expr.operator);
+        break;
+      case SLASH:
+        emitWithToken(OpCode.DIVIDE, expr.operator);
+        break;
+    }
+    pop(1);
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpr(Grouping expr) {
+    compile(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Literal expr) {
+    if (expr.value == null) {
+      emit(OpCode.NIL);
+    } else if (Boolean.TRUE.equals(expr.value)) {
+      emit(OpCode.TRUE);
+    } else if (Boolean.FALSE.equals(expr.value)) {
+      emit(OpCode.FALSE);
+    } else {
+      emit(OpCode.CONSTANT);
+      chunk.writeU24(chunk.addConstant(expr.value), line);
+    }
+    push();
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Unary expr) {
+    compile(expr.right);
+    line = expr.operator.line;
+    if (expr.operator.type == TokenType.MINUS) {
+      emitWithToken(OpCode.NEGATE, expr.operator);
+    } else {
+      emit(OpCode.NOT);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Variable expr) {
+    line = expr.name.line;
+    if (expr.slot != -1 && body && expr.depth == 0) {
+      emit(OpCode.GET_LOCAL);
+      chunk.writeU24(expr.slot, line);
+      chunk.writeU24(chunk.addConstant(expr.name), line);
+    } else if (expr.slot != -1) {
+      emit(OpCode.GET_GLOBAL);
+      chunk.writeU24(expr.slot, line);
+      chunk.writeU24(chunk.addConstant(expr.name), line);
+    } else {
+      emitWithToken(OpCode.GET_GLOBAL_NAMED, expr.name);
+    }
+    push();
+    return null;
+  }
+
+  @Override
+  public Void visitCommaExpr(Comma expr) {
+    // Every value but the last one is dropped
+    for (int i = 0; i < expr.exprs.size(); i++) {
+      if (i > 0) {
+        emit(OpCode.DISCARD);
+        pop(1);
+      }
+      compile(expr.exprs.get(i));
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitTernaryExpr(Ternary expr) {
+    compile(expr.condition);
+    int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+    pop(1);
+    compile(expr.then);
+    int endJump = emitJump(OpCode.JUMP);
+    // Only one of the branches leaves its value
+    pop(1);
+    chunk.patchU24(elseJump, chunk.count);
+    compile(expr.elseThen);
+    chunk.patchU24(endJump, chunk.count);
+    return null;
+  }
+
+  @Override
+  public Void visitCallExpr(Call expr) {
+    compile(expr.callee);
+    int count = expr.arguments.size();
+    // The callee is checked before the arguments are evaluated, like the
+    // Interpreter does
+    line = expr.paren.line;
+    emitWithToken(OpCode.CHECK_CALL, count, expr.paren);
+    for (Expr argument : expr.arguments) {
+      compile(argument);
+    }
+    line = expr.paren.line;
+    emitWithToken(OpCode.CALL, count, expr.paren);
+    pop(count);
+    return null;
+  }
+
+  private void compile(Expr expr) {
+    expr.accept(this);
+  }
+
+  private void emit(byte op) {
+    chunk.write(op, line);
+  }
+
+  private void emitWithToken(byte op, Token token) {
+    emit(op);
+    chunk.writeU24(chunk.addConstant(token), line);
+  }
+
+  private void emitWithToken(byte op, int operand, Token token) {
+    emit(op);
+    chunk.writeU24(operand, line);
+    chunk.writeU24(chunk.addConstant(token), line);
+  }
+
+  /**
+   * @return Offset of the target, to patch once it is known
+   */
+  private int emitJump(byte op) {
+    emit(op);
+    chunk.writeU24(0, line);
+    return chunk.count - 3;
+  }
+
+  private void push() {
+    stackDepth++;
+    if (stackDepth > chunk.maxStack)
+      chunk.maxStack = stackDepth;
+  }
+
+  private void pop(int count) {
+    stackDepth -= count;
+  }
+}
@@ -0,0 +1,290 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Document
+ * A source kept scanned and parsed across edits, for editor tooling. An edit
+ * is re-scanned from the start of the declaration it falls in until the new
+ * tokens line up with the old ones again, and only the declarations over the
+ * changed tokens are re-parsed, every other Stmt is the same object as before,
+ * or a copy on other lines when the edit added or removed lines above it.
+ *
+ * Token starts are always outside of strings and (nested) block comments, so
+ * the start of a declaration is a safe place to restart the scanner, and the
+ * parser, as Parser.synchronize also treats declarations as independent.
+ */
+final class Document {
+  private char[] source;
+  private TokenBuffer tokens;
+  private final List<Stmt> statements = new ArrayList<>();
+  // Index of the first token of each of the statements
+  private int[] declarations = new int[64];
+  private final SymbolTable symbols = new SymbolTable();
+  // Gets the syntax errors of every scan and parse
+  private final ErrorReporter reporter;
+
+  // Declarations parsed by the last edit
+  private int reparsed = 0;
+
+  Document(String source, ErrorReporter reporter) {
+    this.reporter = reporter;
+    this.source = source.toCharArray();
+    this.tokens = new Scanner(this.source, 0, 1, symbols, reporter).scanTokens();
+    reparse(0, 0, Integer.MAX_VALUE, 0);
+  }
+
+  String source() {
+    return new String(source);
+  }
+
+  TokenBuffer tokens() {
+    return tokens;
+  }
+
+  /**
+   * Top-level declarations, null for the ones with a syntax error, same as
+   * Parser.parse
+   */
+  List<Stmt> statements() {
+    return statements;
+  }
+
+  /**
+   * How many declarations the last edit parsed again
+   */
+  int reparsed() {
+    return reparsed;
+  }
+
+  /**
+   * Applies an edit to the source
+   *
+   * @param offset   Position the edit starts at
+   * @param removed  How many characters are removed from there
+   * @param inserted Text inserted in their place
+   * @return The statements of the edited source
+   */
+  List<Stmt> edit(int offset, int removed, String inserted) {
+    if (offset < 0 || removed < 0 || offset + removed > source.length)
+      throw new IndexOutOfBoundsException("Edit outside of the source.");
+
+    char[] edited = new char[source.length - removed + inserted.length()];
+    System.arraycopy(source, 0, edited, 0, offset);
+    inserted.getChars(0, inserted.length(), edited, offset);
+    System.arraycopy(source, offset + removed, edited, offset + inserted.length(),
+        source.length - offset - removed);
+    int shift = inserted.length() - removed;
+    int editEnd = offset + inserted.length();
+
+    // Restart at the declaration holding the last token before the edit, that
+    // token may grow (e.g. typing at the end of a name). A declaration right
+    // after a syntax error may have been swallowed by its recovery, so back up
+    // over those too.
+    int declaration = 0;
+    int last = tokens.search(offset);
+    last = last < 0 ? -last - 2 : last - 1;
+    if (last >= 0 && statements.size() > 0) {
+      declaration = Arrays.binarySearch(declarations, 0, statements.size(), last);
+      declaration = declaration < 0 ? -declaration - 2 : declaration;
+      while (declaration > 0 && statements.get(declaration - 1) == null)
+        declaration--;
+    }
+    int restart = statements.isEmpty() ? 0 : declarations[declaration];
+    int from = last >= 0 ? tokens.start(restart) : 0;
+    int line = last >= 0 ? tokens.line(restart) : 1;
+    // A string token has the line it ends on
+    for (int i = from; last >= 0 && i < from + tokens.length(restart); i++) {
+      if (source[i] == '\n')
+        line--;
+    }
+
+    // Scan until a token past the edit starts where an old token started,
+    // from there on the scanner reads the same characters in the same state
+    Scanner scanner = new Scanner(edited, from, line, symbols, reporter);
+    TokenBuffer scanned = scanner.tokens();
+    int resync;
+    for (;;) {
+      int index = scanned.size();
+      scanner.scanNext();
+      int start = scanned.start(index);
+      if (start >= editEnd) {
+        resync = tokens.search(start - shift);
+        if (resync >= 0 && tokens.type(resync) == scanned.type(index)
+            && tokens.length(resync) == scanned.length(index)) {
+          int lineShift = scanned.line(index) - tokens.line(resync);
+          int after = restart + index;
+          tokens.replace(restart, resync, scanned, index, shift, lineShift);
+          source = edited;
+          reparse(declaration, restart, after, resync - after);
+          if (lineShift != 0) {
+            moveLines(declaration + reparsed, lineShift);
+          }
+          return statements;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parses the declarations from one on, until one starts at an unchanged
+   * token where an old declaration started too
+   *
+   * @param declaration First declaration to parse
+   * @param from        Index of its first token
+   * @param unchanged   Index of the first token that was kept from before
+   * @param moved       How far the kept tokens moved, old index minus new
+   */
+  private void reparse(int declaration, int from, int unchanged, int moved) {
+    List<Stmt> parsed = new ArrayList<>();
+    int[] starts = new int[16];
+    int count = 0;
+    int reuse = statements.size();
+
+    Parser parser = new Parser(tokens, from, reporter);
+    while (parser.hasNext()) {
+      int at = parser.position();
+      if (at >= unchanged) {
+        int old = Arrays.binarySearch(declarations, declaration, statements.size(), at + moved);
+        if (old >= 0) {
+          reuse = old;
+          break;
+        }
+      }
+      if (count == starts.length)
+        starts = Arrays.copyOf(starts, count * 2);
+      starts[count++] = at;
+      parsed.add(parser.next());
+    }
+
+    int kept = statements.size() - reuse;
+    int[] spliced = new int[Math.max(declaration + count + kept, 64)];
+    System.arraycopy(declarations, 0, spliced, 0, declaration);
+    System.arraycopy(starts, 0, spliced, declaration, count);
+    for (int i = 0; i < kept; i++) {
+      spliced[declaration + count + i] = declarations[reuse + i] - moved;
+    }
+    declarations = spliced;
+
+    statements.subList(declaration, reuse).clear();
+    statements.addAll(declaration, parsed);
+    reparsed = count;
+  }
+
+  private void moveLines(int from, int lineShift) {
+    LineMover mover = new LineMover(lineShift);
+    for (int i = from; i < statements.size(); i++) {
+      if (statements.get(i) != null)
+        statements.set(i, statements.get(i).accept(mover));
+    }
+  }
+
+  /**
+   * Copies the kept statements after an edit that changed the number of
+   * lines above them, with their tokens moved. Tokens and statements are
+   * never changed once parsed, a Program or the Jit may still hold them.
+   */
+  private static class LineMover implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private final int lineShift;
+
+    LineMover(int lineShift) {
+      this.lineShift = lineShift;
+    }
+
+    private Token move(Token token) {
+      return new Token(token.type, token.lexeme, token.literal, token.line + lineShift);
+    }
+
+    private Expr move(Expr expr) {
+      return expr == null ? null : expr.accept(this);
+    }
+
+    private List<Expr> move(List<Expr> exprs) {
+      List<Expr> moved = new ArrayList<>(exprs.size());
+      for (Expr expr : exprs) {
+        moved.add(move(expr));
+      }
+      return moved;
+    }
+
+    private Stmt moved(Stmt copy, Stmt original) {
+      copy.line = original.line + lineShift;
+      return copy;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+      return moved(new Stmt.Expression(move(stmt.expr)), stmt);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+      return moved(new Stmt.Print(move(stmt.expr)), stmt);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+      return moved(new Stmt.Var(move(stmt.name), move(stmt.initializer)), stmt);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+      List<Token> params = new ArrayList<>(stmt.params.size());
+      for (Token param : stmt.params) {
+        params.add(move(param));
+      }
+      List<Stmt> body = new ArrayList<>(stmt.body.size());
+      for (Stmt statement : stmt.body) {
+        body.add(statement == null ? null : statement.accept(this));
+      }
+      return moved(new Stmt.Function(move(stmt.name), params, body), stmt);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+      return moved(new Stmt.Return(move(stmt.keyword), move(stmt.value)), stmt);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+      return new Expr.Binary(move(expr.left), move(expr.operator), move(expr.right));
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+      return new Expr.Grouping(move(expr.expression));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+      return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+      return new Expr.Unary(move(expr.operator), move(expr.right));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+      return new Expr.Variable(move(expr.name));
+    }
+
+    @Override
+    public Expr visitCommaExpr(Expr.Comma expr) {
+      return new Expr.Comma(move(expr.exprs));
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+      return new Expr.Ternary(move(expr.condition), move(expr.then), move(expr.elseThen), move(expr.operator));
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+      return new Expr.Call(move(expr.callee), move(expr.paren), move(expr.arguments));
+    }
+  }
+}
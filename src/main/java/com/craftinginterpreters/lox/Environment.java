@@ -1,20 +1,164 @@
-
 package com.craftinginterpreters.lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Environment
+ * Variables live in slots of a plain array, the Resolver gives every variable
+ * its (depth, slot) before the code runs, so reads and writes never hash the
+ * name.
+ */
 public class Environment {
-  private final Map<String, Object> values = new HashMap<>();
+  // Value of a slot whose variable was declared but has not been defined yet
+  static final Object UNDEFINED = new Object();
+
+  final Environment enclosing;
+  private Object[] values;
+
+  // Name to slot index, only the global environment keeps it. It is what lets
+  // the REPL see globals defined on previous lines and what unresolved
+  // references fall back to.
+  private final Map<String, Integer> names;
+
+  Environment() {
+    this.enclosing = null;
+    this.values = new Object[16];
+    this.names = new HashMap<>();
+    Arrays.fill(values, UNDEFINED);
+  }
+
+  /**
+   * Global environment with the same globals as another one, which is left
+   * untouched
+   */
+  Environment(Environment globals) {
+    this.enclosing = null;
+    this.values = globals.values.clone();
+    this.names = new HashMap<>(globals.names);
+  }
+
+  Environment(Environment enclosing, int size) {
+    this.enclosing = enclosing;
+    this.values = new Object[size];
+    this.names = null;
+    Arrays.fill(values, UNDEFINED);
+  }
+
+  /**
+   * Number of slots of a frame
+   */
+  int capacity() {
+    return values.length;
+  }
+
+  /**
+   * Value of a slot of this environment, UNDEFINED if it has none
+   */
+  Object value(int slot) {
+    return values[slot];
+  }
+
+  /**
+   * Value of a global by name, UNDEFINED if it has none
+   */
+  Object value(String name) {
+    Integer slot = names.get(name);
+    return slot == null ? UNDEFINED : values[slot];
+  }
+
+  /**
+   * Makes the first slots of a frame undefined again, so it can be reused
+   * for another call without keeping the values of the last one alive
+   */
+  void clear(int size) {
+    Arrays.fill(values, 0, size, UNDEFINED);
+  }
+
+  /**
+   * Reserves a slot for a global, reusing it if the global was already declared
+   *
+   * @param name Variable name
+   * @return Slot of the variable
+   */
+  int declare(String name) {
+    Integer slot = names.get(name);
+    if (slot != null)
+      return slot;
 
+    slot = names.size();
+    if (slot == values.length) {
+      int length = values.length;
+      values = Arrays.copyOf(values, length * 2);
+      Arrays.fill(values, length, values.length, UNDEFINED);
+    }
+    names.put(name, slot);
+    return slot;
+  }
+
+  /**
+   * @param name Variable name
+   * @return Slot of a declared global or -1
+   */
+  int slotOf(String name) {
+    Integer slot = names.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * Slow path for references the Resolver couldn't bind, looks the name up in
+   * the globals
+   */
   Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
+    Environment globals = this;
+    while (globals.enclosing != null)
+      globals = globals.enclosing;
+
+    int slot = globals.slotOf(name.lexeme);
+    if (slot == -1) {
+      throw new RuntimeError(name, "Undefined Variable '" + name.lexeme + "'.");
+    }
+    return globals.getAt(0, slot, name);
+  }
+
+  Object getAt(int depth, int slot, Token name) {
+    Object value = ancestor(depth).values[slot];
+    if (value == UNDEFINED) {
+      throw new RuntimeError(name, "Undefined Variable '" + name.lexeme + "'.");
     }
-    throw new RuntimeError(name, "Undefined Variable '" + name.lexeme + "'.");
+    return value;
   }
 
+  void define(int slot, Object value) {
+    values[slot] = value;
+  }
+
+  /**
+   * Defines a global by name, for code that wasn't resolved
+   */
   void define(String name, Object value) {
-    values.put(name, value);
+    values[declare(name)] = value;
+  }
+
+  /**
+   * Defines every global that is defined in another global environment, by
+   * name
+   */
+  void defineAll(Environment globals) {
+    for (Map.Entry<String, Integer> global : globals.names.entrySet()) {
+      Object value = globals.values[global.getValue()];
+      if (value != UNDEFINED) {
+        define(global.getKey(), value);
+      }
+    }
+  }
+
+  private Environment ancestor(int depth) {
+    Environment environment = this;
+    for (int i = 0; i < depth; i++) {
+      environment = environment.enclosing;
+    }
+    return environment;
   }
 }
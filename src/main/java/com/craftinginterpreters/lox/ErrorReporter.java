@@ -0,0 +1,23 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * ErrorReporter
+ * Where the scanner, the parser and the interpreter send their errors. Lox
+ * prints them to stderr, an embedder can collect them per script.
+ */
+public interface ErrorReporter {
+
+  /**
+   * A scanning or parsing error
+   *
+   * @param where e.g. " at 'x'", " at end " or empty
+   */
+  void syntaxError(int line, String where, String message);
+
+  /**
+   * An error that stopped a running program
+   *
+   * @param lexeme Lexeme of the token it happened at
+   */
+  void runtimeError(int line, String lexeme, String message);
+}
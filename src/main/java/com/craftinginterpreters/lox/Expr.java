@@ -3,6 +3,10 @@ package com.craftinginterpreters.lox;
 import java.util.List;
 
 abstract class Expr {
+  // True when the expression can only produce a number (or fail), the
+  // Interpreter evaluates those as raw doubles
+  boolean numeric = false;
+
   /**
    * Visitor
    */
@@ -21,6 +25,8 @@ abstract class Expr {
     R visitTernaryExpr(Ternary expr);
 
     R visitVariableExpr(Variable expr);
+
+    R visitCallExpr(Call expr);
   }
 
   static class Binary extends Expr {
@@ -28,6 +34,18 @@ abstract class Expr {
       this.left = left;
       this.operator = operator;
       this.right = right;
+      switch (operator.type) {
+        case MINUS:
+        case STAR:
+        case SLASH:
+          this.numeric = true;
+          break;
+        case PLUS:
+          this.numeric = left.numeric && right.numeric;
+          break;
+        default:
+          break;
+      }
     }
 
     @Override
@@ -43,6 +61,7 @@ abstract class Expr {
   static class Grouping extends Expr {
     Grouping(Expr expression) {
       this.expression = expression;
+      this.numeric = expression.numeric;
     }
 
     @Override
@@ -56,6 +75,7 @@ abstract class Expr {
   static class Literal extends Expr {
     Literal(Object value) {
       this.value = value;
+      this.numeric = value instanceof Double;
     }
 
     @Override
@@ -70,6 +90,7 @@ abstract class Expr {
     Unary(Token operator, Expr right) {
       this.operator = operator;
       this.right = right;
+      this.numeric = operator.type == TokenType.MINUS;
     }
 
     @Override
@@ -81,20 +102,6 @@ abstract class Expr {
     final Expr right;
   }
 
-  static class Variable extends Expr {
-    Variable(Token name) {
-      this.name = name;
-    }
-
-    @Override
-    <R> R accept(Visitor<R> visitor) {
-      return visitor.visitVariableExpr(this);
-    }
-
-    final Token name;
-
-  }
-
   static class Comma extends Expr {
     Comma(List<Expr> exprs) {
       this.exprs = exprs;
@@ -106,12 +113,9 @@ abstract class Expr {
     }
 
     final List<Expr> exprs;
-
   }
 
-  // TODO: impove implementation
   static class Ternary extends Expr {
-
     Ternary(Expr condition, Expr then, Expr elseThen, Token operator) {
       this.condition = condition;
       this.then = then;
@@ -128,7 +132,40 @@ abstract class Expr {
     final Expr then;
     final Expr elseThen;
     final Token operator;
+  }
+
+  static class Variable extends Expr {
+    Variable(Token name) {
+      this.name = name;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitVariableExpr(this);
+    }
+
+    final Token name;
+    // Filled in by the Resolver, -1 means look the name up at runtime
+    int depth = -1;
+    int slot = -1;
+  }
+
+  static class Call extends Expr {
+    Call(Expr callee, Token paren, List<Expr> arguments) {
+      this.callee = callee;
+      this.paren = paren;
+      this.arguments = arguments;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCallExpr(this);
+    }
 
+    final Expr callee;
+    // The closing parenthesis, where call errors are reported
+    final Token paren;
+    final List<Expr> arguments;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,223 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * ExprNode
+ * Executable expression, built from an Expr by the NodeBuilder
+ */
+abstract class ExprNode extends Node {
+
+  abstract Object execute(Environment environment);
+
+  @Override
+  void replaceChild(Node child, Node replacement) {
+    throw new IllegalStateException(getClass().getSimpleName() + " has no children.");
+  }
+
+  static final class Literal extends ExprNode {
+    private final Object value;
+
+    Literal(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return value;
+    }
+  }
+
+  static final class Variable extends ExprNode {
+    private final Token name;
+    private final int depth;
+    private final int slot;
+
+    Variable(Token name, int depth, int slot) {
+      this.name = name;
+      this.depth = depth;
+      this.slot = slot;
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      if (slot != -1) {
+        return environment.getAt(depth, slot, name);
+      }
+      return environment.get(name);
+    }
+  }
+
+  static final class Not extends ExprNode {
+    private ExprNode right;
+
+    Not(ExprNode right) {
+      this.right = adopt(right);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return !Interpreter.isTruthy(right.execute(environment));
+    }
+
+    @Override
+    void replaceChild(Node child, Node replacement) {
+      if (right != child)
+        throw notAChild(child);
+      right = (ExprNode) replacement;
+    }
+  }
+
+  static final class Ternary extends ExprNode {
+    private ExprNode condition;
+    private ExprNode then;
+    private ExprNode elseThen;
+
+    Ternary(ExprNode condition, ExprNode then, ExprNode elseThen) {
+      this.condition = adopt(condition);
+      this.then = adopt(then);
+      this.elseThen = adopt(elseThen);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      return Interpreter.isTruthy(condition.execute(environment)) ? then.execute(environment)
+          : elseThen.execute(environment);
+    }
+
+    @Override
+    void replaceChild(Node child, Node replacement) {
+      if (condition == child) {
+        condition = (ExprNode) replacement;
+      } else if (then == child) {
+        then = (ExprNode) replacement;
+      } else if (elseThen == child) {
+        elseThen = (ExprNode) replacement;
+      } else {
+        throw notAChild(child);
+      }
+    }
+  }
+
+  /**
+   * Evaluates every expression, the value is the last one's
+   */
+  static final class Comma extends ExprNode {
+    private final ExprNode[] exprs;
+
+    Comma(ExprNode[] exprs) {
+      this.exprs = exprs;
+      for (ExprNode expr : exprs) {
+        adopt(expr);
+      }
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      Object value = null;
+      for (ExprNode expr : exprs) {
+        value = expr.execute(environment);
+      }
+      return value;
+    }
+
+    @Override
+    void replaceChild(Node child, Node replacement) {
+      for (int i = 0; i < exprs.length; i++) {
+        if (exprs[i] == child) {
+          exprs[i] = (ExprNode) replacement;
+          return;
+        }
+      }
+      throw notAChild(child);
+    }
+  }
+
+  /**
+   * Calls a function with a frame from the NodeInterpreter's pool
+   */
+  static final class Call extends ExprNode {
+    private final NodeInterpreter runtime;
+    private final Token paren;
+    private ExprNode callee;
+    private final ExprNode[] arguments;
+
+    Call(NodeInterpreter runtime, Token paren, ExprNode callee, ExprNode[] arguments) {
+      this.runtime = runtime;
+      this.paren = paren;
+      this.callee = adopt(callee);
+      this.arguments = arguments;
+      for (ExprNode argument : arguments) {
+        adopt(argument);
+      }
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      Object value = callee.execute(environment);
+      if (!(value instanceof NodeBuilder.Function))
+        throw new RuntimeError(paren, "Can only call functions.");
+      NodeBuilder.Function function = (NodeBuilder.Function) value;
+      if (function.arity != arguments.length) {
+        throw new RuntimeError(paren,
+            "Expected " + function.arity + " arguments but got " + arguments.length + ".");
+      }
+
+      int size = function.declaration.frameSize;
+      Environment frame = runtime.enter(size);
+      try {
+        for (int i = 0; i < arguments.length; i++) {
+          frame.define(i, arguments[i].execute(environment));
+        }
+        for (StmtNode statement : function.body) {
+          statement.execute(frame);
+        }
+        return function.result.value(frame);
+      } catch (StackOverflowError e) {
+        throw new RuntimeError(paren, "Stack overflow.");
+      } finally {
+        runtime.exit(frame, size);
+      }
+    }
+
+    @Override
+    void replaceChild(Node child, Node replacement) {
+      if (callee == child) {
+        callee = (ExprNode) replacement;
+        return;
+      }
+      for (int i = 0; i < arguments.length; i++) {
+        if (arguments[i] == child) {
+          arguments[i] = (ExprNode) replacement;
+          return;
+        }
+      }
+      throw notAChild(child);
+    }
+  }
+
+  /**
+   * Unary minus, only numbers are valid so there is a single specialisation
+   */
+  static final class Negate extends ExprNode {
+    private final Token operator;
+    private ExprNode right;
+
+    Negate(Token operator, ExprNode right) {
+      this.operator = operator;
+      this.right = adopt(right);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+      Object value = right.execute(environment);
+      Interpreter.checkNumberOperand(operator, value);
+      return -(double) value;
+    }
+
+    @Override
+    void replaceChild(Node child, Node replacement) {
+      if (right != child)
+        throw notAChild(child);
+      right = (ExprNode) replacement;
+    }
+  }
+}
@@ -0,0 +1,387 @@
+package com.craftinginterpreters.lox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * FlatAst
+ * A program kept in a few flat arrays instead of a Stmt and Expr object per
+ * node, for programs so large that object headers, pointers and Tokens take
+ * most of the heap and scatter it.
+ *
+ * Every node is a record of three ints in `nodes`: its kind in the low bits
+ * of the first one and the index of its token in the rest, then two
+ * operands, which are node indices, a line, a list offset or the bits of a
+ * number. Nodes are stored children first, so the last child of a node is
+ * the record right before it, which is how a Ternary finds its else branch.
+ * Variable-length children (comma operands, call arguments, parameters and
+ * bodies) are a count followed by the items in `lists`. Tokens are kept as
+ * columns (type, line, lexeme) with one String per distinct lexeme, and
+ * strings, booleans and nil in `constants`.
+ *
+ * The Interpreter, Resolver and AstPrinter work on Stmt and Expr, so a
+ * FlatAst hands out statements decoded on demand: statement(i), or
+ * statements() as a List whose get decodes. The decoded objects are not
+ * kept, a program is decoded one statement at a time while it runs. Variable
+ * slots and the rest of what the Resolver fills in live on the decoded
+ * objects, so a statement is resolved after it is decoded.
+ */
+final class FlatAst {
+  // Node kinds
+  private static final int BINARY = 1;
+  private static final int GROUPING = 2;
+  private static final int NUMBER = 3;
+  private static final int CONSTANT = 4;
+  private static final int UNARY = 5;
+  private static final int VARIABLE = 6;
+  private static final int COMMA = 7;
+  private static final int TERNARY = 8;
+  private static final int CALL = 9;
+  private static final int EXPRESSION = 10;
+  private static final int PRINT = 11;
+  private static final int VAR = 12;
+  private static final int FUNCTION = 13;
+  private static final int RETURN = 14;
+
+  private static final int KIND_BITS = 5;
+  private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+  private static final int STRIDE = 3;
+  private static final int NONE = -1;
+
+  private static final TokenType[] TYPES = TokenType.values();
+
+  private int[] nodes = new int[STRIDE * 256];
+  private int nodeCount = 0;
+  private int[] lists = new int[64];
+  private int listSize = 0;
+
+  private byte[] tokenTypes = new byte[256];
+  private int[] tokenLines = new int[256];
+  private String[] lexemes = new String[256];
+  private int tokenCount = 0;
+  // Makes every lexeme a single String, however many tokens have it. Dropped
+  // by trim.
+  private SymbolTable symbols = new SymbolTable();
+
+  private Object[] constants = new Object[16];
+  private int constantCount = 0;
+
+  private int[] statements = new int[64];
+  private int statementCount = 0;
+
+  static FlatAst of(List<Stmt> statements) {
+    FlatAst ast = new FlatAst();
+    for (Stmt statement : statements) {
+      ast.add(statement);
+    }
+    return ast.trim();
+  }
+
+  /**
+   * Appends a top-level statement, which can be dropped afterwards
+   */
+  void add(Stmt statement) {
+    if (statementCount == statements.length)
+      statements = Arrays.copyOf(statements, grow(statementCount));
+    statements[statementCount++] = stmt(statement);
+  }
+
+  int size() {
+    return statementCount;
+  }
+
+  /**
+   * Number of Stmt and Expr nodes
+   */
+  int nodes() {
+    return nodeCount;
+  }
+
+  /**
+   * Bytes taken by the arrays, as allocated
+   */
+  long bytes() {
+    // 4-byte (compressed) references
+    return array(nodes.length, 4) + array(lists.length, 4) + array(tokenTypes.length, 1)
+        + array(tokenLines.length, 4) + array(lexemes.length, 4) + array(constants.length, 4)
+        + array(statements.length, 4);
+  }
+
+  /**
+   * Size of one array on the heap: a 16-byte header, the elements, padded to
+   * 8 bytes
+   */
+  private static long array(int length, int elementBytes) {
+    return (16 + (long) length * elementBytes + 7) & ~7L;
+  }
+
+  /**
+   * Shrinks the arrays to what is used, once everything is added
+   */
+  FlatAst trim() {
+    nodes = Arrays.copyOf(nodes, nodeCount * STRIDE);
+    lists = Arrays.copyOf(lists, listSize);
+    tokenTypes = Arrays.copyOf(tokenTypes, tokenCount);
+    tokenLines = Arrays.copyOf(tokenLines, tokenCount);
+    lexemes = Arrays.copyOf(lexemes, tokenCount);
+    constants = Arrays.copyOf(constants, constantCount);
+    statements = Arrays.copyOf(statements, statementCount);
+    symbols = null;
+    return this;
+  }
+
+  /**
+   * Decodes a top-level statement, a new object every time
+   */
+  Stmt statement(int index) {
+    return decodeStmt(statements[index]);
+  }
+
+  /**
+   * The statements, decoded when they are got
+   */
+  List<Stmt> statements() {
+    return new AbstractList<Stmt>() {
+      @Override
+      public Stmt get(int index) {
+        if (index < 0 || index >= statementCount)
+          throw new IndexOutOfBoundsException(index);
+        return statement(index);
+      }
+
+      @Override
+      public int size() {
+        return statementCount;
+      }
+    };
+  }
+
+  /**
+   * Decodes the node at an index and has a visitor visit it
+   */
+  <R> R accept(int node, Expr.Visitor<R> visitor) {
+    return decodeExpr(node).accept(visitor);
+  }
+
+  // Encoding
+
+  // Arrays can be empty after trim
+  private static int grow(int length) {
+    return Math.max(length * 2, 16);
+  }
+
+  private int node(int kind, Token token, int a, int b) {
+    int tokenIndex = token == null ? 0 : token(token);
+    if (tokenIndex > (Integer.MAX_VALUE >>> KIND_BITS) || nodeCount == Integer.MAX_VALUE / STRIDE)
+      throw new IllegalStateException("Program too large for a FlatAst.");
+    int at = nodeCount * STRIDE;
+    if (at == nodes.length)
+      nodes = Arrays.copyOf(nodes, grow(nodes.length));
+    nodes[at] = kind | tokenIndex << KIND_BITS;
+    nodes[at + 1] = a;
+    nodes[at + 2] = b;
+    return nodeCount++;
+  }
+
+  private int token(Token token) {
+    if (tokenCount == tokenTypes.length) {
+      tokenTypes = Arrays.copyOf(tokenTypes, grow(tokenCount));
+      tokenLines = Arrays.copyOf(tokenLines, grow(tokenCount));
+      lexemes = Arrays.copyOf(lexemes, grow(tokenCount));
+    }
+    tokenTypes[tokenCount] = (byte) token.type.ordinal();
+    tokenLines[tokenCount] = token.line;
+    if (symbols == null)
+      symbols = new SymbolTable();
+    lexemes[tokenCount] = symbols.intern(token.lexeme);
+    return tokenCount++;
+  }
+
+  private int list(int count) {
+    while (listSize + count + 1 > lists.length)
+      lists = Arrays.copyOf(lists, grow(lists.length));
+    int offset = listSize;
+    lists[offset] = count;
+    listSize += count + 1;
+    return offset;
+  }
+
+  private int constant(Object value) {
+    if (constantCount == constants.length)
+      constants = Arrays.copyOf(constants, grow(constantCount));
+    constants[constantCount] = value;
+    return constantCount++;
+  }
+
+  private int stmt(Stmt stmt) {
+    if (stmt instanceof Stmt.Expression)
+      return node(EXPRESSION, null, expr(((Stmt.Expression) stmt).expr), stmt.line);
+    if (stmt instanceof Stmt.Print)
+      return node(PRINT, null, expr(((Stmt.Print) stmt).expr), stmt.line);
+    if (stmt instanceof Stmt.Var) {
+      Stmt.Var var = (Stmt.Var) stmt;
+      return node(VAR, var.name, var.initializer == null ? NONE : expr(var.initializer), stmt.line);
+    }
+    if (stmt instanceof Stmt.Return) {
+      Stmt.Return ret = (Stmt.Return) stmt;
+      return node(RETURN, ret.keyword, ret.value == null ? NONE : expr(ret.value), stmt.line);
+    }
+
+    Stmt.Function function = (Stmt.Function) stmt;
+    int[] body = new int[function.body.size()];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = stmt(function.body.get(i));
+    }
+    // Parameter tokens, then the body
+    int params = list(function.params.size());
+    for (int i = 0; i < function.params.size(); i++) {
+      lists[params + 1 + i] = token(function.params.get(i));
+    }
+    int statements = list(body.length);
+    System.arraycopy(body, 0, lists, statements + 1, body.length);
+    return node(FUNCTION, function.name, params, stmt.line);
+  }
+
+  private int expr(Expr expr) {
+    if (expr instanceof Expr.Binary) {
+      Expr.Binary binary = (Expr.Binary) expr;
+      int left = expr(binary.left);
+      int right = expr(binary.right);
+      return node(BINARY, binary.operator, left, right);
+    }
+    if (expr instanceof Expr.Grouping)
+      return node(GROUPING, null, expr(((Expr.Grouping) expr).expression), 0);
+    if (expr instanceof Expr.Literal) {
+      Object value = ((Expr.Literal) expr).value;
+      if (value instanceof Double) {
+        long bits = Double.doubleToRawLongBits((double) value);
+        return node(NUMBER, null, (int) (bits >>> 32), (int) bits);
+      }
+      // Folded ropes are flattened by the Optimizer already
+      return node(CONSTANT, null, constant(value), 0);
+    }
+    if (expr instanceof Expr.Unary) {
+      Expr.Unary unary = (Expr.Unary) expr;
+      return node(UNARY, unary.operator, expr(unary.right), 0);
+    }
+    if (expr instanceof Expr.Variable)
+      return node(VARIABLE, ((Expr.Variable) expr).name, 0, 0);
+    if (expr instanceof Expr.Comma) {
+      List<Expr> exprs = ((Expr.Comma) expr).exprs;
+      int[] items = new int[exprs.size()];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = expr(exprs.get(i));
+      }
+      int list = list(items.length);
+      System.arraycopy(items, 0, lists, list + 1, items.length);
+      return node(COMMA, null, list, 0);
+    }
+    if (expr instanceof Expr.Ternary) {
+      Expr.Ternary ternary = (Expr.Ternary) expr;
+      int condition = expr(ternary.condition);
+      int then = expr(ternary.then);
+      expr(ternary.elseThen);
+      return node(TERNARY, ternary.operator, condition, then);
+    }
+
+    Expr.Call call = (Expr.Call) expr;
+    int callee = expr(call.callee);
+    int[] arguments = new int[call.arguments.size()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = expr(call.arguments.get(i));
+    }
+    int list = list(arguments.length);
+    System.arraycopy(arguments, 0, lists, list + 1, arguments.length);
+    return node(CALL, call.paren, callee, list);
+  }
+
+  // Decoding
+
+  private Token tokenOf(int node) {
+    int index = nodes[node * STRIDE] >>> KIND_BITS;
+    return tokenAt(index);
+  }
+
+  private Token tokenAt(int index) {
+    return new Token(TYPES[tokenTypes[index]], lexemes[index], null, tokenLines[index]);
+  }
+
+  private Stmt decodeStmt(int node) {
+    int at = node * STRIDE;
+    int a = nodes[at + 1];
+    int line = nodes[at + 2];
+    Stmt stmt;
+    switch (nodes[at] & KIND_MASK) {
+      case EXPRESSION:
+        stmt = new Stmt.Expression(decodeExpr(a));
+        break;
+      case PRINT:
+        stmt = new Stmt.Print(decodeExpr(a));
+        break;
+      case VAR:
+        stmt = new Stmt.Var(tokenOf(node), a == NONE ? null : decodeExpr(a));
+        break;
+      case RETURN:
+        stmt = new Stmt.Return(tokenOf(node), a == NONE ? null : decodeExpr(a));
+        break;
+      case FUNCTION: {
+        int count = lists[a];
+        List<Token> params = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          params.add(tokenAt(lists[a + 1 + i]));
+        }
+        int statements = a + 1 + count;
+        List<Stmt> body = new ArrayList<>(lists[statements]);
+        for (int i = 0; i < lists[statements]; i++) {
+          body.add(decodeStmt(lists[statements + 1 + i]));
+        }
+        stmt = new Stmt.Function(tokenOf(node), params, body);
+        break;
+      }
+      default:
+        throw new IllegalStateException("Not a statement: " + node);
+    }
+    stmt.line = line;
+    return stmt;
+  }
+
+  private Expr decodeExpr(int node) {
+    int at = node * STRIDE;
+    int a = nodes[at + 1];
+    int b = nodes[at + 2];
+    switch (nodes[at] & KIND_MASK) {
+      case BINARY:
+        return new Expr.Binary(decodeExpr(a), tokenOf(node), decodeExpr(b));
+      case GROUPING:
+        return new Expr.Grouping(decodeExpr(a));
+      case NUMBER:
+        return new Expr.Literal(Double.longBitsToDouble((long) a << 32 | (b & 0xffffffffL)));
+      case CONSTANT:
+        return new Expr.Literal(constants[a]);
+      case UNARY:
+        return new Expr.Unary(tokenOf(node), decodeExpr(a));
+      case VARIABLE:
+        return new Expr.Variable(tokenOf(node));
+      case COMMA: {
+        List<Expr> exprs = new ArrayList<>(lists[a]);
+        for (int i = 0; i < lists[a]; i++) {
+          exprs.add(decodeExpr(lists[a + 1 + i]));
+        }
+        return new Expr.Comma(exprs);
+      }
+      case TERNARY:
+        return new Expr.Ternary(decodeExpr(a), decodeExpr(b), decodeExpr(node - 1), tokenOf(node));
+      case CALL: {
+        List<Expr> arguments = new ArrayList<>(lists[b]);
+        for (int i = 0; i < lists[b]; i++) {
+          arguments.add(decodeExpr(lists[b + 1 + i]));
+        }
+        return new Expr.Call(decodeExpr(a), tokenOf(node), arguments);
+      }
+      default:
+        throw new IllegalStateException("Not an expression: " + node);
+    }
+  }
+}
@@ -1,9 +1,13 @@
 
 package com.craftinginterpreters.lox;
 
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.craftinginterpreters.lox.Expr.Binary;
+import com.craftinginterpreters.lox.Expr.Call;
 import com.craftinginterpreters.lox.Expr.Comma;
 import com.craftinginterpreters.lox.Expr.Grouping;
 import com.craftinginterpreters.lox.Expr.Literal;
@@ -17,19 +21,85 @@ import com.craftinginterpreters.lox.Stmt.Var;
  */
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
-  private Environment environment = new Environment();
+  final Environment globals;
+  private Environment environment;
+
+  private final OutputSink out;
+  private final ErrorReporter reporter;
+  // Whether hot statements are compiled, see Jit
+  private final boolean jit;
+  // Jit state of the statements of the function bodies run so far. Top-level
+  // statements run once, only a statement in a body can get hot.
+  private final Map<Stmt, Jit.Profile> profiles = new IdentityHashMap<>();
+
+  // Call frames, indexed by the number of calls in progress. A frame never
+  // outlives its call (functions aren't nested, nothing can capture it), so
+  // it is kept for the next call at the same depth instead of allocated.
+  private Environment[] frames = new Environment[16];
+  private int calls = 0;
+  // Value of the return statement that just ran
+  private Object returned;
+
+  // Limits of the run in progress, and how many statements may run before
+  // it is asked again
+  private Budget budget;
+  private long countdown = Long.MAX_VALUE;
+
+  Interpreter() {
+    this(new Environment(), OutputSink.of(null), Lox.reporter);
+  }
+
+  Interpreter(Environment globals, OutputSink out, ErrorReporter reporter) {
+    this(globals, out, reporter, true);
+  }
+
+  Interpreter(Environment globals, OutputSink out, ErrorReporter reporter, boolean jit) {
+    this.globals = globals;
+    this.environment = globals;
+    this.out = out;
+    this.reporter = reporter;
+    this.jit = jit;
+  }
+
+  /**
+   * @return false if a runtime error stopped the statements
+   */
+  boolean interpret(List<Stmt> statements) {
+    return interpret(statements, null);
+  }
 
-  void interpret(List<Stmt> statements) {
+  /**
+   * Runs the statements within a budget, null for none
+   *
+   * @return false if a runtime error or the budget stopped the statements
+   */
+  boolean interpret(List<Stmt> statements, Budget budget) {
+    Telemetry.InterpretEvent event = Telemetry.beginInterpret();
+    this.budget = budget;
+    countdown = budget == null ? Long.MAX_VALUE : 0;
+    int executed = 0;
     try {
       for (Stmt statement : statements) {
         execute(statement);
+        executed++;
       }
+      return true;
     } catch (RuntimeError e) {
-      Lox.runtimeError(e);
+      Telemetry.runtimeErrors.increment();
+      // What was printed before the error comes before it
+      out.flush();
+      reporter.runtimeError(e.token.line, e.token.lexeme, e.getMessage());
+      return false;
+    } finally {
+      if (budget != null)
+        budget.refund(countdown);
+      this.budget = null;
+      countdown = Long.MAX_VALUE;
+      Telemetry.interpreted(event, "tree", executed);
     }
   }
 
-  private String stringify(Object object) {
+  static String stringify(Object object) {
     if (object == null)
       return "nil";
 
@@ -46,98 +116,65 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitBinaryExpr(Binary expr) {
+    if (expr.numeric) {
+      // Boxed once here instead of once per operation below
+      return evaluateDouble(expr);
+    }
+
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
+    return allocated(expr.operator, binary(expr.operator, left, right));
+  }
 
-    switch (expr.operator.type) {
+  /**
+   * Counts a string an operator made against the budget, if there is one
+   */
+  Object allocated(Token operator, Object value) {
+    if (budget != null && value instanceof CharSequence)
+      budget.allocate(operator, value);
+    return value;
+  }
+
+  /**
+   * Applies a binary operator to operands that are already evaluated. The
+   * other engines share it so every engine has the same semantics.
+   */
+  static Object binary(Token operator, Object left, Object right) {
+    switch (operator.type) {
       // Arithmetic
       case MINUS:
-        checkNumberOperands(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left - (double) right;
       case SLASH:
-        checkNumberOperands(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         if ((Double) right == 0) {
-          throw new RuntimeError(expr.operator, "You are trying to divide by zero.");
+          throw new RuntimeError(operator, "You are trying to divide by zero.");
         }
         return (double) left / (double) right;
       case STAR:
-        checkNumberOperands(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left * (double) right;
       case PLUS:
         if (left instanceof Double && right instanceof Double) {
           return (double) left + (double) right;
         }
 
-        if (left instanceof String && right instanceof String) {
-          return (String) left + (String) right;
+        if ((left instanceof CharSequence || left instanceof Double)
+            && (right instanceof CharSequence || right instanceof Double)) {
+          return Rope.concat(operator, left, right);
         }
-
-        if ((left instanceof String && right instanceof Double)
-            || (left instanceof Double && right instanceof String)) {
-          return stringify(left) + stringify(right);
-        }
-        throw new RuntimeError(expr.operator, "The operands must be numbers or strings");
-      // ) Comparison
+        throw new RuntimeError(operator, "The operands must be numbers or strings");
+      // Comparison, strings compare by length
       case GREATER:
-        if (left instanceof String && right instanceof Double) {
-          return left.toString().length() > (Double) right;
-        }
-        if (left instanceof Double && right instanceof String) {
-          return (Double) left > right.toString().length();
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (Double) left > (Double) right;
-        }
-        if (left instanceof String && right instanceof String) {
-          return left.toString().length() > right.toString().length();
-        }
-        throw new RuntimeError(expr.operator, "Unsuported comparison.");
+        return magnitude(operator, left) > magnitude(operator, right);
       case GREATER_EQUAL:
-
-        if (left instanceof String && right instanceof Double) {
-          return left.toString().length() >= (Double) right;
-        }
-        if (left instanceof Double && right instanceof String) {
-          return (Double) left >= right.toString().length();
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (Double) left >= (Double) right;
-        }
-        if (left instanceof String && right instanceof String) {
-          return left.toString().length() >= right.toString().length();
-        }
-        throw new RuntimeError(expr.operator, "Unsuported comparison.");
+        return magnitude(operator, left) >= magnitude(operator, right);
       case LESS:
-
-        if (left instanceof String && right instanceof Double) {
-          return left.toString().length() < (Double) right;
-        }
-        if (left instanceof Double && right instanceof String) {
-          return (Double) left < right.toString().length();
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (Double) left < (Double) right;
-        }
-        if (left instanceof String && right instanceof String) {
-          return left.toString().length() < right.toString().length();
-        }
-        throw new RuntimeError(expr.operator, "Unsuported comparison.");
+        return magnitude(operator, left) < magnitude(operator, right);
       case LESS_EQUAL:
-        if (left instanceof String && right instanceof Double) {
-          return left.toString().length() <= (Double) right;
-        }
-        if (left instanceof Double && right instanceof String) {
-          return (Double) left <= right.toString().length();
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (Double) left <= (Double) right;
-        }
-        if (left instanceof String && right instanceof String) {
-          return left.toString().length() <= right.toString().length();
-        }
-        throw new RuntimeError(expr.operator, "Unsuported comparison.");
+        return magnitude(operator, left) <= magnitude(operator, right);
       // Equality
-      case EQUAL:
+      case EQUAL_EQUAL:
         return isEqual(left, right);
       case BANG_EQUAL:
         return !isEqual(left, right);
@@ -147,6 +184,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     return null;
   }
 
+  /**
+   * Value of an operand in a comparison, numbers compare by value and strings
+   * by length
+   */
+  static double magnitude(Token operator, Object operand) {
+    if (operand instanceof Double)
+      return (double) operand;
+    if (operand instanceof CharSequence)
+      return ((CharSequence) operand).length();
+    throw new RuntimeError(operator, "Unsuported comparison.");
+  }
+
   @Override
   public Object visitGroupingExpr(Grouping expr) {
     return evaluate(expr.expression);
@@ -159,6 +208,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitUnaryExpr(Unary expr) {
+    if (expr.numeric) {
+      return evaluateDouble(expr);
+    }
+
     Object right = evaluate(expr.right);
 
     switch (expr.operator.type) {
@@ -171,41 +224,267 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     return null;
   }
 
+  /**
+   * Evaluates a numeric expression without boxing, so nested arithmetic like
+   * 3.14 * (5 - 2) never allocates a Double for the intermediate results.
+   * Errors and the order operands are evaluated in are the same as on the
+   * boxed path.
+   *
+   * @param expr Expression with numeric set
+   * @return Value of the expression
+   */
+  private double evaluateDouble(Expr expr) {
+    if (expr instanceof Literal) {
+      return (double) ((Literal) expr).value;
+    }
+    if (expr instanceof Grouping) {
+      return evaluateDouble(((Grouping) expr).expression);
+    }
+    if (expr instanceof Unary) {
+      Unary unary = (Unary) expr;
+      if (unary.right.numeric) {
+        return -evaluateDouble(unary.right);
+      }
+      Object right = evaluate(unary.right);
+      checkNumberOperand(unary.operator, right);
+      return -(double) right;
+    }
+
+    Binary binary = (Binary) expr;
+    double left = 0;
+    double right = 0;
+    Object boxedLeft = null;
+    Object boxedRight = null;
+
+    if (binary.left.numeric) {
+      left = evaluateDouble(binary.left);
+    } else {
+      boxedLeft = evaluate(binary.left);
+    }
+    if (binary.right.numeric) {
+      right = evaluateDouble(binary.right);
+    } else {
+      boxedRight = evaluate(binary.right);
+    }
+
+    // Only -, * and / can have operands of unknown type, + needs both numeric
+    if (!binary.left.numeric || !binary.right.numeric) {
+      if ((!binary.left.numeric && !(boxedLeft instanceof Double))
+          || (!binary.right.numeric && !(boxedRight instanceof Double))) {
+        throw new RuntimeError(binary.operator, "Operands must be numbers.");
+      }
+      if (!binary.left.numeric)
+        left = (double) boxedLeft;
+      if (!binary.right.numeric)
+        right = (double) boxedRight;
+    }
+
+    switch (binary.operator.type) {
+      case MINUS:
+        return left - right;
+      case STAR:
+        return left * right;
+      case SLASH:
+        if (right == 0) {
+          throw new RuntimeError(binary.operator, "You are trying to divide by zero.");
+        }
+        return left / right;
+      default:
+        return left + right;
+    }
+  }
+
   @Override
   public Object visitVariableExpr(Variable expr) {
+    if (expr.slot != -1) {
+      return environment.getAt(expr.depth, expr.slot, expr.name);
+    }
     return environment.get(expr.name);
   }
 
   @Override
   public Object visitCommaExpr(Comma expr) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'visitCommaExpr'");
+    Object value = null;
+    for (Expr e : expr.exprs) {
+      value = evaluate(e);
+    }
+    return value;
   }
 
   @Override
   public Object visitTernaryExpr(Ternary expr) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'visitTernaryExpr'");
+    return isTruthy(evaluate(expr.condition)) ? evaluate(expr.then) : evaluate(expr.elseThen);
+  }
+
+  @Override
+  public Object visitCallExpr(Call expr) {
+    Stmt.Function function = function(expr, evaluate(expr.callee));
+    List<Expr> arguments = expr.arguments;
+    Environment frame = frame(function.frameSize);
+    // Calls in the arguments take the frames above this one
+    calls++;
+    try {
+      for (int i = 0; i < arguments.size(); i++) {
+        frame.define(i, evaluate(arguments.get(i)));
+      }
+    } finally {
+      calls--;
+    }
+    return call(expr, function, frame);
+  }
+
+  /**
+   * Function a call calls, checked before its arguments are evaluated
+   */
+  Stmt.Function function(Call expr, Object callee) {
+    if (!(callee instanceof LoxFunction)) {
+      throw new RuntimeError(expr.paren, "Can only call functions.");
+    }
+    Stmt.Function function = ((LoxFunction) callee).declaration;
+    if (expr.arguments.size() != function.params.size()) {
+      throw new RuntimeError(expr.paren,
+          "Expected " + function.params.size() + " arguments but got " + expr.arguments.size() + ".");
+    }
+    return function;
+  }
+
+  // Calls from compiled code, which evaluated the arguments already. The
+  // frame is only taken now, the calls in the arguments are over.
+
+  Object call(Call expr, Stmt.Function function) {
+    return call(expr, function, frame(function.frameSize));
+  }
+
+  Object call(Call expr, Stmt.Function function, Object a0) {
+    Environment frame = frame(function.frameSize);
+    frame.define(0, a0);
+    return call(expr, function, frame);
+  }
+
+  Object call(Call expr, Stmt.Function function, Object a0, Object a1) {
+    Environment frame = frame(function.frameSize);
+    frame.define(0, a0);
+    frame.define(1, a1);
+    return call(expr, function, frame);
+  }
+
+  Object call(Call expr, Stmt.Function function, Object a0, Object a1, Object a2) {
+    Environment frame = frame(function.frameSize);
+    frame.define(0, a0);
+    frame.define(1, a1);
+    frame.define(2, a2);
+    return call(expr, function, frame);
+  }
+
+  Object call(Call expr, Stmt.Function function, Object[] arguments) {
+    Environment frame = frame(function.frameSize);
+    for (int i = 0; i < arguments.length; i++) {
+      frame.define(i, arguments[i]);
+    }
+    return call(expr, function, frame);
+  }
+
+  /**
+   * Runs a function body in a frame that holds its arguments
+   */
+  private Object call(Call expr, Stmt.Function function, Environment frame) {
+    if (budget != null) {
+      for (int i = 0; i < function.params.size(); i++) {
+        budget.store(function.params.get(i), null, frame.value(i));
+      }
+    }
+    Environment caller = environment;
+    environment = frame;
+    calls++;
+    try {
+      for (Stmt statement : function.body) {
+        execute(statement);
+        if (statement instanceof Stmt.Return) {
+          Object value = returned;
+          returned = null;
+          return value;
+        }
+      }
+      return null;
+    } catch (StackOverflowError e) {
+      throw new RuntimeError(expr.paren, "Stack overflow.");
+    } finally {
+      environment = caller;
+      calls--;
+      if (budget != null)
+        budget.release(frame, function.frameSize);
+      frame.clear(function.frameSize);
+    }
   }
 
-  private Object evaluate(Expr expr) {
+  /**
+   * Frame for a call made while `calls` calls are in progress
+   */
+  private Environment frame(int size) {
+    if (calls == frames.length) {
+      frames = Arrays.copyOf(frames, calls * 2);
+    }
+    Environment frame = frames[calls];
+    if (frame == null || frame.capacity() < size) {
+      frame = new Environment(globals, Math.max(size, 8));
+      frames[calls] = frame;
+    }
+    return frame;
+  }
+
+  Object evaluate(Expr expr) {
     return expr.accept(this);
   }
 
-  private void execute(Stmt stmt) {
+  void execute(Stmt stmt) {
+    if (--countdown < 0)
+      countdown = budget.next(stmt);
     stmt.accept(this);
   }
 
+  /**
+   * Drops the jit state of a function's body, once nothing can call the
+   * function any more
+   */
+  void forget(LoxFunction function) {
+    for (Stmt statement : function.declaration.body) {
+      profiles.remove(statement);
+    }
+  }
+
+  /**
+   * Evaluates the expression of a statement, with its compiled code once the
+   * statement is hot
+   */
+  private Object evaluate(Stmt stmt, Expr expr) {
+    if (!jit || calls == 0)
+      return evaluate(expr);
+
+    Jit.Profile profile = profiles.computeIfAbsent(stmt, s -> new Jit.Profile());
+    Jit.Code code = profile.compiled;
+    if (code != null) {
+      try {
+        return code.evaluate(this, environment);
+      } catch (Jit.Deopt e) {
+        // Nothing happened yet, the tree does it all again
+        Jit.deoptimize(profile);
+      }
+    } else if (++profile.executions == Jit.THRESHOLD) {
+      Jit.compile(profile, expr);
+    }
+    return evaluate(expr);
+  }
+
   @Override
   public Void visitExpressionStmt(Stmt.Expression stmt) {
-    evaluate(stmt.expr);
+    evaluate(stmt, stmt.expr);
     return null;
   }
 
   @Override
   public Void visitPrintStmt(Stmt.Print stmt) {
-    Object value = evaluate(stmt.expr);
-    System.out.println(stringify(value));
+    Object value = evaluate(stmt, stmt.expr);
+    out.println(stringify(value));
     return null;
   }
 
@@ -213,13 +492,39 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   public Void visitVarStmt(Stmt.Var stmt) {
     Object value = null;
     if (stmt.initializer != null) {
-      value = evaluate(stmt.initializer);
+      value = evaluate(stmt, stmt.initializer);
+    }
+    if (budget != null) {
+      budget.store(stmt.name, stmt.slot != -1 ? environment.value(stmt.slot) : environment.value(stmt.name.lexeme),
+          value);
+    }
+    if (stmt.slot != -1) {
+      environment.define(stmt.slot, value);
+    } else {
+      environment.define(stmt.name.lexeme, value);
     }
-    environment.define(stmt.name.lexeme, value);
     return null;
   }
 
-  private boolean isTruthy(Object object) {
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    LoxFunction function = new LoxFunction(stmt);
+    if (stmt.slot != -1) {
+      environment.define(stmt.slot, function);
+    } else {
+      environment.define(stmt.name.lexeme, function);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    // Only ever the last statement a call runs, see visitCallExpr
+    returned = stmt.value == null ? null : evaluate(stmt, stmt.value);
+    return null;
+  }
+
+  static boolean isTruthy(Object object) {
     if (object == null)
       return false;
     if (object instanceof Boolean)
@@ -227,23 +532,27 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     return true;
   }
 
-  private boolean isEqual(Object a, Object b) {
+  static boolean isEqual(Object a, Object b) {
     if (a == null && b == null)
       return true;
     if (a == null)
       return false;
+    if (a instanceof CharSequence && b instanceof CharSequence) {
+      // Flattens ropes only when the lengths don't tell already
+      return ((CharSequence) a).length() == ((CharSequence) b).length() && a.toString().equals(b.toString());
+    }
 
     return a.equals(b);
   }
 
-  private void checkNumberOperand(Token operator, Object operand) {
+  static void checkNumberOperand(Token operator, Object operand) {
     if (operand instanceof Double)
       return;
     throw new RuntimeError(operator, "Operand must be a number.");
   }
 
-  private void checkNumberOperands(Token operator, Object left, Object right) {
-    if (left instanceof Double && left instanceof Double)
+  static void checkNumberOperands(Token operator, Object left, Object right) {
+    if (left instanceof Double && right instanceof Double)
       return;
     throw new RuntimeError(operator, "Operands must be numbers.");
   }
@@ -0,0 +1,144 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Jit
+ * Second tier of the Interpreter. Every statement in a function body counts
+ * how many times the Interpreter evaluated its expression, and once that
+ * reaches THRESHOLD the expression is compiled by a JitCompiler into a hidden
+ * class, which the Interpreter calls from then on instead of walking the
+ * tree, so the JVM's own JIT optimises the Lox code as plain Java. The counts
+ * and the code are kept by each Interpreter in a Profile per statement, the
+ * AST itself is never written, so one Program can run in many threads.
+ *
+ * Compiled code throws the same RuntimeErrors, with the same tokens, as the
+ * tree-walker. It may speculate that the operands of a '+' are numbers, but
+ * only in expressions without calls: nothing else has side effects, so when
+ * the guess is wrong it throws DEOPT and the Interpreter evaluates the
+ * expression again on the tree. The statement then goes back to counting
+ * and is compiled again without speculating.
+ */
+final class Jit {
+  static final int THRESHOLD = Integer.getInteger("lox.jit.threshold", 1000);
+
+  // Statements compiled and compiled code thrown away, for --stats
+  static final LongAdder compiled = new LongAdder();
+  static final LongAdder deoptimized = new LongAdder();
+
+  // Compiled classes are defined in this package, next to Code
+  private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+  private Jit() {
+  }
+
+  /**
+   * Base class of compiled code, `constants` holds the tokens, strings and
+   * calls the code refers to
+   */
+  abstract static class Code {
+    final Object[] constants;
+
+    Code(Object[] constants) {
+      this.constants = constants;
+    }
+
+    /**
+     * @param environment Environment the Interpreter is in
+     * @return Value of the expression
+     */
+    abstract Object evaluate(Interpreter interpreter, Environment environment);
+  }
+
+  /**
+   * Thrown by compiled code whose speculation failed, before anything it did
+   * could be seen
+   */
+  static final class Deopt extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private Deopt() {
+      super(null, null, false, false);
+    }
+  }
+
+  static final Deopt DEOPT = new Deopt();
+
+  /**
+   * Profile
+   * What one Interpreter knows of a statement: how many times it evaluated
+   * its expression, the compiled code once it is hot and whether that code
+   * may speculate (not after it had to deoptimize)
+   */
+  static final class Profile {
+    int executions;
+    Code compiled;
+    boolean speculate = true;
+  }
+
+  /**
+   * Compiles the expression of a statement that became hot. Code too large
+   * for a class file stays on the tree.
+   */
+  static void compile(Profile profile, Expr expr) {
+    JitCompiler compiler = new JitCompiler(profile.speculate && !JitCompiler.hasCalls(expr));
+    byte[] bytes;
+    try {
+      bytes = compiler.compile(expr);
+    } catch (IllegalArgumentException e) {
+      return;
+    }
+    try {
+      Class<?> code = lookup.defineHiddenClass(bytes, true).lookupClass();
+      profile.compiled = (Code) code.getDeclaredConstructor(Object[].class).newInstance((Object) compiler.constants());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot load compiled code.", e);
+    }
+    compiled.increment();
+  }
+
+  static void deoptimize(Profile profile) {
+    profile.compiled = null;
+    profile.speculate = false;
+    profile.executions = 0;
+    deoptimized.increment();
+  }
+
+  // Called by compiled code, with the messages of the tree-walker
+
+  static double number(Object value, Token operator) {
+    if (value instanceof Double)
+      return (double) value;
+    throw new RuntimeError(operator, "Operands must be numbers.");
+  }
+
+  static double operand(Object value, Token operator) {
+    if (value instanceof Double)
+      return (double) value;
+    throw new RuntimeError(operator, "Operand must be a number.");
+  }
+
+  static double magnitude(Object value, Token operator) {
+    return Interpreter.magnitude(operator, value);
+  }
+
+  static double speculate(Object value) {
+    if (value instanceof Double)
+      return (double) value;
+    throw DEOPT;
+  }
+
+  static double divide(double left, double right, Token operator) {
+    if (right == 0) {
+      throw new RuntimeError(operator, "You are trying to divide by zero.");
+    }
+    return left / right;
+  }
+
+  static Object add(Object left, Object right, Token operator, Interpreter interpreter) {
+    if (left instanceof Double && right instanceof Double)
+      return (double) left + (double) right;
+    return interpreter.allocated(operator, Interpreter.binary(operator, left, right));
+  }
+}
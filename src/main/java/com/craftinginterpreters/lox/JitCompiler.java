@@ -0,0 +1,702 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.lox.Expr.Binary;
+import com.craftinginterpreters.lox.Expr.Call;
+import com.craftinginterpreters.lox.Expr.Comma;
+import com.craftinginterpreters.lox.Expr.Grouping;
+import com.craftinginterpreters.lox.Expr.Literal;
+import com.craftinginterpreters.lox.Expr.Ternary;
+import com.craftinginterpreters.lox.Expr.Unary;
+import com.craftinginterpreters.lox.Expr.Variable;
+
+/**
+ * JitCompiler
+ * Writes the class file of a Jit.Code whose evaluate method computes an
+ * expression. Numbers and booleans stay raw doubles and ints on the JVM
+ * stack between operators, and are only boxed where a value leaves the
+ * expression or goes to the Interpreter. Arguments of calls are evaluated by
+ * the compiled code too, the Interpreter only checks the callee and runs the
+ * body. Variables, calls and errors go through the same Environment,
+ * Interpreter and Jit methods as the tree-walker, so the code behaves exactly
+ * like it.
+ *
+ * Every ternary gets a method of its own, so a method has at most one branch
+ * and its operand stack is empty there, which keeps the stack map to one
+ * same_frame.
+ */
+final class JitCompiler {
+  private static final String CODE = "com/craftinginterpreters/lox/Jit$Code";
+  private static final String JIT = "com/craftinginterpreters/lox/Jit";
+  private static final String INTERPRETER = "com/craftinginterpreters/lox/Interpreter";
+  private static final String ENVIRONMENT = "com/craftinginterpreters/lox/Environment";
+  private static final String CALL = "com/craftinginterpreters/lox/Expr$Call";
+  private static final String FUNCTION = "com/craftinginterpreters/lox/Stmt$Function";
+  private static final String TOKEN = "Lcom/craftinginterpreters/lox/Token;";
+  private static final String OBJECT = "Ljava/lang/Object;";
+  private static final String EVALUATE = "(L" + INTERPRETER + ";L" + ENVIRONMENT + ";)" + OBJECT;
+
+  // What an expression leaves on the operand stack
+  private enum Kind {
+    OBJECT, DOUBLE, BOOLEAN
+  }
+
+  private final boolean speculate;
+
+  private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream pool = new DataOutputStream(poolBytes);
+  private final Map<String, Integer> entries = new HashMap<>();
+  private int poolSize = 1;
+
+  private final List<Object> constants = new ArrayList<>();
+  private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+  private final List<Method> methods = new ArrayList<>();
+
+  /**
+   * @param speculate Whether '+' may assume numbers, only for expressions
+   *                  without side effects
+   */
+  JitCompiler(boolean speculate) {
+    this.speculate = speculate;
+  }
+
+  static boolean hasCalls(Expr expr) {
+    if (expr instanceof Call)
+      return true;
+    if (expr instanceof Binary)
+      return hasCalls(((Binary) expr).left) || hasCalls(((Binary) expr).right);
+    if (expr instanceof Unary)
+      return hasCalls(((Unary) expr).right);
+    if (expr instanceof Grouping)
+      return hasCalls(((Grouping) expr).expression);
+    if (expr instanceof Ternary) {
+      Ternary ternary = (Ternary) expr;
+      return hasCalls(ternary.condition) || hasCalls(ternary.then) || hasCalls(ternary.elseThen);
+    }
+    if (expr instanceof Comma) {
+      for (Expr e : ((Comma) expr).exprs) {
+        if (hasCalls(e))
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Objects to pass to the constructor of the compiled class
+   */
+  Object[] constants() {
+    return constants.toArray();
+  }
+
+  /**
+   * @return Class file of a subclass of Jit.Code
+   * @throws IllegalArgumentException if the expression is too large for a
+   *                                  method
+   */
+  byte[] compile(Expr expr) {
+    Method constructor = new Method(0, "<init>", "([" + OBJECT + ")V", 2);
+    constructor.op(0x2a, 1); // aload_0
+    constructor.op(0x2b, 1); // aload_1
+    constructor.invoke(0xb7, CODE, "<init>", "([" + OBJECT + ")V", true);
+    constructor.op(0xb1, 0); // return
+    methods.add(constructor);
+
+    Method evaluate = new Method(0, "evaluate", EVALUATE, 3);
+    methods.add(evaluate);
+    evaluate.box(evaluate.expression(expr));
+    evaluate.op(0xb0, -1); // areturn
+
+    try {
+      return write();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private byte[] write() throws IOException {
+    int thisClass = classEntry("com/craftinginterpreters/lox/JitCode");
+    int superClass = classEntry(CODE);
+    int codeName = utf8("Code");
+    int stackMapName = utf8("StackMapTable");
+    for (Method method : methods) {
+      method.nameIndex = utf8(method.name);
+      method.descriptorIndex = utf8(method.descriptor);
+    }
+    if (poolSize > 0xffff)
+      throw new IllegalArgumentException("Too many constants.");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0xcafebabe);
+    out.writeShort(0);
+    out.writeShort(61); // Java 17
+    out.writeShort(poolSize);
+    poolBytes.writeTo(out);
+    out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+    out.writeShort(thisClass);
+    out.writeShort(superClass);
+    out.writeShort(0); // interfaces
+    out.writeShort(0); // fields
+    out.writeShort(methods.size());
+    for (Method method : methods) {
+      int length = method.length;
+      if (length > 0xffff)
+        throw new IllegalArgumentException("Method too large.");
+      out.writeShort(method.access);
+      out.writeShort(method.nameIndex);
+      out.writeShort(method.descriptorIndex);
+      out.writeShort(1);
+      out.writeShort(codeName);
+      int frameSize = method.frame == -1 ? 0 : (method.frame <= 63 ? 9 : 11);
+      out.writeInt(12 + length + frameSize);
+      out.writeShort(method.maxStack);
+      out.writeShort(method.maxLocals);
+      out.writeInt(length);
+      out.write(method.code, 0, length);
+      out.writeShort(0); // exception table
+      if (method.frame == -1) {
+        out.writeShort(0);
+        continue;
+      }
+      out.writeShort(1);
+      out.writeShort(stackMapName);
+      out.writeInt(frameSize - 6);
+      out.writeShort(1);
+      if (method.frame <= 63) {
+        out.writeByte(method.frame); // same_frame
+      } else {
+        out.writeByte(251); // same_frame_extended
+        out.writeShort(method.frame);
+      }
+    }
+    out.writeShort(0); // attributes
+    return bytes.toByteArray();
+  }
+
+  // Constant pool
+
+  private int entry(String key, int slots, PoolWriter writer) {
+    Integer index = entries.get(key);
+    if (index != null)
+      return index;
+    index = poolSize;
+    try {
+      writer.write();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    poolSize += slots;
+    entries.put(key, index);
+    return index;
+  }
+
+  private interface PoolWriter {
+    void write() throws IOException;
+  }
+
+  private int utf8(String value) {
+    return entry("U" + value, 1, () -> {
+      pool.writeByte(1);
+      pool.writeUTF(value);
+    });
+  }
+
+  private int classEntry(String name) {
+    int nameIndex = utf8(name);
+    return entry("C" + name, 1, () -> {
+      pool.writeByte(7);
+      pool.writeShort(nameIndex);
+    });
+  }
+
+  private int member(int tag, String owner, String name, String descriptor) {
+    int ownerIndex = classEntry(owner);
+    int nameIndex = utf8(name);
+    int descriptorIndex = utf8(descriptor);
+    int nameAndType = entry("N" + name + ":" + descriptor, 1, () -> {
+      pool.writeByte(12);
+      pool.writeShort(nameIndex);
+      pool.writeShort(descriptorIndex);
+    });
+    return entry(tag + owner + "." + name + ":" + descriptor, 1, () -> {
+      pool.writeByte(tag);
+      pool.writeShort(ownerIndex);
+      pool.writeShort(nameAndType);
+    });
+  }
+
+  private int doubleEntry(double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    return entry("D" + bits, 2, () -> {
+      pool.writeByte(6);
+      pool.writeLong(bits);
+    });
+  }
+
+  private int constant(Object value) {
+    Integer index = constantIndex.get(value);
+    if (index == null) {
+      index = constants.size();
+      constants.add(value);
+      constantIndex.put(value, index);
+    }
+    return index;
+  }
+
+  /**
+   * Bytecode of one method, with its operand stack depth tracked as it is
+   * written
+   */
+  private final class Method {
+    final int access;
+    final String name;
+    final String descriptor;
+    int nameIndex;
+    int descriptorIndex;
+
+    byte[] code = new byte[64];
+    int length = 0;
+    int depth = 0;
+    int maxStack = 0;
+    int maxLocals;
+    // Offset of the only branch target, -1 if there is none
+    int frame = -1;
+
+    Method(int access, String name, String descriptor, int locals) {
+      this.access = access;
+      this.name = name;
+      this.descriptor = descriptor;
+      this.maxLocals = locals;
+    }
+
+    private void u1(int value) {
+      if (length == code.length)
+        code = Arrays.copyOf(code, length * 2);
+      code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+      u1(value >> 8);
+      u1(value);
+    }
+
+    void op(int opcode, int stack) {
+      u1(opcode);
+      depth += stack;
+      maxStack = Math.max(maxStack, depth);
+    }
+
+    void invoke(int opcode, String owner, String name, String descriptor, boolean hasReceiver) {
+      int stack = -slots(descriptor.substring(1, descriptor.indexOf(')')));
+      if (hasReceiver)
+        stack--;
+      stack += slots(descriptor.substring(descriptor.indexOf(')') + 1));
+      op(opcode, stack);
+      u2(member(10, owner, name, descriptor));
+    }
+
+    void invokeStatic(String owner, String name, String descriptor) {
+      invoke(0xb8, owner, name, descriptor, false);
+    }
+
+    void pushInt(int value) {
+      if (value >= -1 && value <= 5) {
+        op(0x03 + value, 1); // iconst_<n>
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        op(0x10, 1); // bipush
+        u1(value);
+      } else {
+        op(0x11, 1); // sipush
+        u2(value);
+      }
+    }
+
+    /**
+     * Pushes constants[index] cast to a class
+     */
+    void pushConstant(Object value, String type) {
+      int index = constant(value);
+      if (index > Short.MAX_VALUE)
+        throw new IllegalArgumentException("Too many constants.");
+      op(0x2a, 1); // aload_0
+      op(0xb4, 0); // getfield
+      u2(member(9, CODE, "constants", "[" + OBJECT));
+      pushInt(index);
+      op(0x32, -1); // aaload
+      if (type != null) {
+        op(0xc0, 0); // checkcast
+        u2(classEntry(type));
+      }
+    }
+
+    void pushToken(Token token) {
+      pushConstant(token, "com/craftinginterpreters/lox/Token");
+    }
+
+    int local(Kind kind) {
+      int index = maxLocals;
+      maxLocals += kind == Kind.DOUBLE ? 2 : 1;
+      if (maxLocals > 0xff)
+        throw new IllegalArgumentException("Too many locals.");
+      return index;
+    }
+
+    void store(Kind kind, int local) {
+      switch (kind) {
+        case DOUBLE:
+          op(0x39, -2); // dstore
+          break;
+        case BOOLEAN:
+          op(0x36, -1); // istore
+          break;
+        default:
+          op(0x3a, -1); // astore
+      }
+      u1(local);
+    }
+
+    void load(Kind kind, int local) {
+      switch (kind) {
+        case DOUBLE:
+          op(0x18, 2); // dload
+          break;
+        case BOOLEAN:
+          op(0x15, 1); // iload
+          break;
+        default:
+          op(0x19, 1); // aload
+      }
+      u1(local);
+    }
+
+    void pop(Kind kind) {
+      op(kind == Kind.DOUBLE ? 0x58 : 0x57, kind == Kind.DOUBLE ? -2 : -1); // pop2, pop
+    }
+
+    void box(Kind kind) {
+      if (kind == Kind.DOUBLE) {
+        invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+      } else if (kind == Kind.BOOLEAN) {
+        invokeStatic("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+      }
+    }
+
+    /**
+     * Makes the value on top of the stack a double with one of the Jit
+     * conversions (number, operand, magnitude or speculate)
+     */
+    void toDouble(Kind kind, String conversion, Token operator) {
+      if (kind == Kind.DOUBLE)
+        return;
+      box(kind);
+      if (operator == null) {
+        invokeStatic(JIT, conversion, "(" + OBJECT + ")D");
+      } else {
+        pushToken(operator);
+        invokeStatic(JIT, conversion, "(" + OBJECT + TOKEN + ")D");
+      }
+    }
+
+    /**
+     * Evaluates both operands, then converts them left first, so errors come
+     * in the same order as on the tree
+     */
+    void doubles(Binary binary, String conversion) {
+      Kind left = expression(binary.left);
+      Kind right = expression(binary.right);
+      if (left != Kind.DOUBLE) {
+        int saved = local(right);
+        store(right, saved);
+        toDouble(left, conversion, binary.operator);
+        load(right, saved);
+      }
+      toDouble(right, conversion, binary.operator);
+    }
+
+    void objects(Binary binary) {
+      Kind left = expression(binary.left);
+      Kind right = expression(binary.right);
+      if (left != Kind.OBJECT) {
+        int saved = local(right);
+        store(right, saved);
+        box(left);
+        load(right, saved);
+      }
+      box(right);
+    }
+
+    Kind expression(Expr expr) {
+      if (expr instanceof Literal)
+        return literal(((Literal) expr).value);
+      if (expr instanceof Grouping)
+        return expression(((Grouping) expr).expression);
+      if (expr instanceof Binary)
+        return binary((Binary) expr);
+      if (expr instanceof Unary)
+        return unary((Unary) expr);
+      if (expr instanceof Variable)
+        return variable((Variable) expr);
+      if (expr instanceof Comma) {
+        List<Expr> exprs = ((Comma) expr).exprs;
+        for (int i = 0; i < exprs.size() - 1; i++) {
+          pop(expression(exprs.get(i)));
+        }
+        return expression(exprs.get(exprs.size() - 1));
+      }
+      if (expr instanceof Ternary)
+        return ternary((Ternary) expr);
+      return call((Call) expr);
+    }
+
+    /**
+     * Evaluates the callee, has the Interpreter check it, evaluates the
+     * arguments and has the Interpreter call the function with them
+     */
+    Kind call(Call call) {
+      op(0x2b, 1); // aload_1
+      pushConstant(call, CALL);
+      op(0x2b, 1); // aload_1
+      pushConstant(call, CALL);
+      box(expression(call.callee));
+      invoke(0xb6, INTERPRETER, "function", "(L" + CALL + ";" + OBJECT + ")L" + FUNCTION + ";", true);
+
+      List<Expr> arguments = call.arguments;
+      String parameters;
+      if (arguments.size() <= 3) {
+        for (Expr argument : arguments) {
+          box(expression(argument));
+        }
+        parameters = OBJECT.repeat(arguments.size());
+      } else {
+        pushInt(arguments.size());
+        op(0xbd, 0); // anewarray
+        u2(classEntry("java/lang/Object"));
+        for (int i = 0; i < arguments.size(); i++) {
+          op(0x59, 1); // dup
+          pushInt(i);
+          box(expression(arguments.get(i)));
+          op(0x53, -3); // aastore
+        }
+        parameters = "[" + OBJECT;
+      }
+      invoke(0xb6, INTERPRETER, "call", "(L" + CALL + ";L" + FUNCTION + ";" + parameters + ")" + OBJECT, true);
+      return Kind.OBJECT;
+    }
+
+    Kind literal(Object value) {
+      if (value instanceof Double) {
+        op(0x14, 2); // ldc2_w
+        u2(doubleEntry((double) value));
+        return Kind.DOUBLE;
+      }
+      if (value instanceof Boolean) {
+        pushInt((boolean) value ? 1 : 0);
+        return Kind.BOOLEAN;
+      }
+      if (value == null) {
+        op(0x01, 1); // aconst_null
+        return Kind.OBJECT;
+      }
+      pushConstant(value, null);
+      return Kind.OBJECT;
+    }
+
+    Kind variable(Variable variable) {
+      op(0x2c, 1); // aload_2
+      if (variable.slot != -1) {
+        pushInt(variable.depth);
+        pushInt(variable.slot);
+        pushToken(variable.name);
+        invoke(0xb6, ENVIRONMENT, "getAt", "(II" + TOKEN + ")" + OBJECT, true);
+      } else {
+        pushToken(variable.name);
+        invoke(0xb6, ENVIRONMENT, "get", "(" + TOKEN + ")" + OBJECT, true);
+      }
+      return Kind.OBJECT;
+    }
+
+    Kind unary(Unary unary) {
+      Kind right = expression(unary.right);
+      if (unary.operator.type == TokenType.MINUS) {
+        toDouble(right, "operand", unary.operator);
+        op(0x77, 0); // dneg
+        return Kind.DOUBLE;
+      }
+      truthy(right);
+      pushInt(1);
+      op(0x82, -1); // ixor
+      return Kind.BOOLEAN;
+    }
+
+    /**
+     * Turns the value on top of the stack into 0 or 1 like
+     * Interpreter.isTruthy
+     */
+    void truthy(Kind kind) {
+      if (kind == Kind.DOUBLE) {
+        pop(kind);
+        pushInt(1);
+      } else if (kind == Kind.OBJECT) {
+        invokeStatic(INTERPRETER, "isTruthy", "(" + OBJECT + ")Z");
+      }
+    }
+
+    Kind binary(Binary binary) {
+      switch (binary.operator.type) {
+        case MINUS:
+          doubles(binary, "number");
+          op(0x67, -2); // dsub
+          return Kind.DOUBLE;
+        case STAR:
+          doubles(binary, "number");
+          op(0x6b, -2); // dmul
+          return Kind.DOUBLE;
+        case SLASH:
+          doubles(binary, "number");
+          pushToken(binary.operator);
+          invokeStatic(JIT, "divide", "(DD" + TOKEN + ")D");
+          return Kind.DOUBLE;
+        case PLUS:
+          return add(binary);
+        // dcmpg and dcmpl leave -1, 0 or 1 (1 and -1 for NaN), the shifts
+        // turn that into the boolean without branching
+        case LESS:
+          doubles(binary, "magnitude");
+          op(0x98, -3); // dcmpg
+          shift();
+          return Kind.BOOLEAN;
+        case LESS_EQUAL:
+          doubles(binary, "magnitude");
+          op(0x98, -3); // dcmpg
+          pushInt(1);
+          op(0x64, -1); // isub
+          shift();
+          return Kind.BOOLEAN;
+        case GREATER:
+          doubles(binary, "magnitude");
+          op(0x97, -3); // dcmpl
+          op(0x74, 0); // ineg
+          shift();
+          return Kind.BOOLEAN;
+        case GREATER_EQUAL:
+          doubles(binary, "magnitude");
+          op(0x97, -3); // dcmpl
+          pushInt(-1);
+          op(0x82, -1); // ixor
+          shift();
+          return Kind.BOOLEAN;
+        case EQUAL_EQUAL:
+        case BANG_EQUAL:
+          objects(binary);
+          invokeStatic(INTERPRETER, "isEqual", "(" + OBJECT + OBJECT + ")Z");
+          if (binary.operator.type == TokenType.BANG_EQUAL) {
+            pushInt(1);
+            op(0x82, -1); // ixor
+          }
+          return Kind.BOOLEAN;
+        default:
+          throw new IllegalArgumentException("Unknown operator " + binary.operator.lexeme);
+      }
+    }
+
+    // Sign bit of the int on top of the stack
+    private void shift() {
+      pushInt(31);
+      op(0x7c, -1); // iushr
+    }
+
+    Kind add(Binary binary) {
+      if (binary.numeric || speculate) {
+        Kind left = expression(binary.left);
+        Kind right = expression(binary.right);
+        if (left != Kind.BOOLEAN && right != Kind.BOOLEAN) {
+          if (left != Kind.DOUBLE) {
+            int saved = local(right);
+            store(right, saved);
+            toDouble(left, "speculate", null);
+            load(right, saved);
+          }
+          toDouble(right, "speculate", null);
+          op(0x63, -2); // dadd
+          return Kind.DOUBLE;
+        }
+        // A boolean can never be added, the error comes from Jit.add
+        if (left != Kind.OBJECT) {
+          int saved = local(right);
+          store(right, saved);
+          box(left);
+          load(right, saved);
+        }
+        box(right);
+      } else {
+        objects(binary);
+      }
+      pushToken(binary.operator);
+      op(0x2b, 1); // aload_1, the Interpreter counts the string
+      invokeStatic(JIT, "add", "(" + OBJECT + OBJECT + TOKEN + "L" + INTERPRETER + ";)" + OBJECT);
+      return Kind.OBJECT;
+    }
+
+    /**
+     * Calls a new method that evaluates the ternary and returns its value
+     */
+    Kind ternary(Ternary ternary) {
+      Method method = new Method(0x0002, "ternary" + methods.size(), EVALUATE, 3); // ACC_PRIVATE
+      methods.add(method);
+      Kind condition = method.expression(ternary.condition);
+      if (condition == Kind.DOUBLE) {
+        // Numbers are true
+        method.pop(condition);
+        method.box(method.expression(ternary.then));
+        method.op(0xb0, -1); // areturn
+      } else {
+        method.truthy(condition);
+        int branch = method.length;
+        method.op(0x99, -1); // ifeq
+        method.u2(0);
+        method.box(method.expression(ternary.then));
+        method.op(0xb0, -1); // areturn
+        method.frame = method.length;
+        int offset = method.length - branch;
+        method.code[branch + 1] = (byte) (offset >> 8);
+        method.code[branch + 2] = (byte) offset;
+        method.box(method.expression(ternary.elseThen));
+        method.op(0xb0, -1); // areturn
+      }
+
+      op(0x2a, 1); // aload_0
+      op(0x2b, 1); // aload_1
+      op(0x2c, 1); // aload_2
+      invoke(0xb7, "com/craftinginterpreters/lox/JitCode", method.name, EVALUATE, true);
+      return Kind.OBJECT;
+    }
+  }
+
+  /**
+   * Stack slots taken by a list of descriptors
+   */
+  private static int slots(String descriptors) {
+    int slots = 0;
+    for (int i = 0; i < descriptors.length(); i++) {
+      char c = descriptors.charAt(i);
+      if (c == 'V')
+        continue;
+      slots += c == 'D' || c == 'J' ? 2 : 1;
+      while (c == '[')
+        c = descriptors.charAt(++i);
+      if (c == 'L')
+        i = descriptors.indexOf(';', i);
+    }
+    return slots;
+  }
+}
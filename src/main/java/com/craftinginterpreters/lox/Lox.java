@@ -3,10 +3,22 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Lox
@@ -16,19 +28,211 @@ public class Lox {
   static boolean hadError = false;
   static boolean hadRuntimeError = false;
 
-  private static final Interpreter interpreter = new Interpreter();
+  // Prints to stderr, after what was printed before, and sets the flags above
+  static final ErrorReporter reporter = new ErrorReporter() {
+    @Override
+    public void syntaxError(int line, String where, String message) {
+      out.flush();
+      System.err.println(formatSyntaxError(line, where, message));
+      Telemetry.syntaxErrors.increment();
+      hadError = true;
+    }
+
+    @Override
+    public void runtimeError(int line, String lexeme, String message) {
+      out.flush();
+      System.err.println(formatRuntimeError(line, lexeme, message));
+      hadRuntimeError = true;
+    }
+  };
+
+  static String formatSyntaxError(int line, String where, String message) {
+    return "[line " + line + "] ERROR" + where + ": " + message;
+  }
+
+  static String formatRuntimeError(int line, String lexeme, String message) {
+    return message + "\n[line " + line + "] at " + lexeme;
+  }
+
+  // Execution engine, "tree" walks the AST, "vm" runs compiled bytecode,
+  // "node" runs a self-specialising node tree and "closure" runs the AST
+  // compiled to closures
+  static String engine = "tree";
+
+  // Print what the passes did to stderr
+  static boolean stats = false;
+  // Execute statements as they are parsed instead of parsing the whole file
+  static boolean stream = false;
+  // Keep the parsed program in a FlatAst and decode it one statement at a
+  // time to run it
+  static boolean flat = false;
+  // Run the script again, from the first changed statement, every time it
+  // is saved
+  static boolean watch = false;
+  // Run every script given (files, directories or globs) concurrently
+  static boolean batch = false;
+  static int jobs = Runtime.getRuntime().availableProcessors();
+  // File print statements write to instead of stdout
+  static String output = null;
+  // Compile hot statements to JVM bytecode, see Jit
+  static boolean jit = true;
+  // Limits of a run on the tree engine, 0 for none. A script gets one
+  // Budget for all of it, a REPL line and a --watch run get their own.
+  static long maxStatements = 0;
+  static long timeout = 0;
+  static long maxHeap = 0;
+  private static Budget budget = null;
+  // How long a watched file has to stay unchanged before it runs again,
+  // editors often save in steps (truncate, then write)
+  private static final long SETTLE_MILLIS = 50;
+  // Where to write the collapsed stacks of --profile, null when not profiling
+  static String profile = null;
+  // Where parsed files are cached with --cache, null to always parse them
+  static AstCache cache = null;
+
+  // Shared by every run so a name is the same String on every REPL line
+  private static final SymbolTable symbols = new SymbolTable();
+
+  // Where print statements go, System.out until main picks a BufferedSink
+  private static OutputSink out = OutputSink.of(null);
+
+  private static Interpreter interpreter = new Interpreter();
+  private static VM vm = new VM();
+  private static final NodeInterpreter nodeInterpreter = new NodeInterpreter();
+  private static ClosureInterpreter closureInterpreter = new ClosureInterpreter();
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    List<String> arguments = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith("--engine=")) {
+        engine = arg.substring("--engine=".length());
+        if (!engine.equals("tree") && !engine.equals("vm") && !engine.equals("node")
+            && !engine.equals("closure"))
+          usage();
+      } else if (arg.equals("--stats")) {
+        stats = true;
+      } else if (arg.equals("--stream")) {
+        stream = true;
+      } else if (arg.equals("--flat")) {
+        flat = true;
+      } else if (arg.equals("--watch")) {
+        watch = true;
+      } else if (arg.equals("--cache")) {
+        cache = new AstCache(Paths.get(System.getProperty("user.home"), ".cache", "jlox"), Charset.defaultCharset());
+      } else if (arg.equals("--no-jit")) {
+        jit = false;
+      } else if (arg.startsWith("--max-statements=")) {
+        maxStatements = limit(arg.substring("--max-statements=".length()));
+      } else if (arg.startsWith("--timeout=")) {
+        timeout = limit(arg.substring("--timeout=".length()));
+      } else if (arg.startsWith("--max-heap=")) {
+        maxHeap = limit(arg.substring("--max-heap=".length()));
+      } else if (arg.startsWith("--output=")) {
+        output = arg.substring("--output=".length());
+      } else if (arg.equals("--profile")) {
+        profile = "jlox-profile.collapsed";
+      } else if (arg.startsWith("--profile=")) {
+        profile = arg.substring("--profile=".length());
+      } else if (arg.equals("--batch")) {
+        batch = true;
+      } else if (arg.startsWith("--jobs=")) {
+        try {
+          jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+        } catch (NumberFormatException e) {
+          usage();
+        }
+        if (jobs < 1)
+          usage();
+      } else {
+        arguments.add(arg);
+      }
+    }
+
+    if ((batch && output != null) || (flat && (stream || batch)))
+      usage();
+    if (watch && (stream || flat || batch || arguments.size() != 1 || !engine.equals("tree")))
+      usage();
+    if ((maxStatements > 0 || timeout > 0 || maxHeap > 0) && (batch || !engine.equals("tree")))
+      usage();
+    budget = newBudget();
+    if (!batch) {
+      out = output != null ? BufferedSink.open(Paths.get(output)) : BufferedSink.stdout();
+      interpreter = new Interpreter(new Environment(), out, reporter, jit);
+      vm = new VM(out);
+      closureInterpreter = new ClosureInterpreter(new Environment(), out, reporter);
+    }
+
+    if (profile != null) {
+      if (batch || !engine.equals("tree"))
+        usage();
+      startProfiler();
+    }
+
+    if (batch) {
+      if (arguments.isEmpty())
+        usage();
+      System.exit(new BatchRunner(jobs).run(arguments));
+    } else if (arguments.size() > 1) {
+      usage();
+    } else if (arguments.size() == 1 && watch) {
+      runWatch(arguments.get(0));
+    } else if (arguments.size() == 1 && stream) {
+      runStream(arguments.get(0));
+    } else if (arguments.size() == 1 && flat) {
+      runFlat(arguments.get(0));
+    } else if (arguments.size() == 1) {
+      runFile(arguments.get(0));
     } else {
       runPrompt();
     }
   }
 
+  private static void usage() {
+    System.out.println("Usage: jlox [--engine=tree|vm|node|closure] [--stats] [--stream|--flat] [--cache] [--no-jit] [--output=file] [--profile[=file]]");
+    System.out.println("            [--max-statements=N] [--timeout=ms] [--max-heap=bytes] [script]");
+    System.out.println("       jlox --watch [options] script");
+    System.out.println("       jlox --batch [--jobs=N] file|directory|glob...");
+    System.exit(64);
+  }
+
+  /**
+   * Runs everything on a ProfilingInterpreter and prints the report when the
+   * JVM exits, which runFile does with System.exit
+   */
+  private static void startProfiler() {
+    Profiler profiler = new Profiler();
+    interpreter = new ProfilingInterpreter(profiler, out);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      profiler.stop();
+      try {
+        profiler.writeCollapsed(Paths.get(profile));
+      } catch (IOException e) {
+        System.err.println("Cannot write " + profile + ": " + e.getMessage());
+      }
+      profiler.report(System.err, 20);
+      System.err.println("[profile] stacks written to " + profile);
+    }));
+    profiler.start();
+  }
+
+  private static long limit(String value) {
+    long limit = 0;
+    try {
+      limit = Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      usage();
+    }
+    if (limit < 1)
+      usage();
+    return limit;
+  }
+
+  private static Budget newBudget() {
+    if (maxStatements == 0 && timeout == 0 && maxHeap == 0)
+      return null;
+    return new Budget(maxStatements, timeout == 0 ? null : Duration.ofMillis(timeout), maxHeap);
+  }
+
   private static void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
@@ -38,59 +242,314 @@ public class Lox {
       String line = reader.readLine();
       if (line == null)
         break;
+      budget = newBudget();
       run(line);
+      out.flush();
       hadError = false;
     }
   }
 
-  private static void run(String source) {
-    Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
-    Parser parser = new Parser(tokens);
-    List<Stmt> statements = parser.parse();
-
+  static void run(String source) {
+    Telemetry.scripts.increment();
+    List<Stmt> statements = parse(source);
     if (hadError)
       return;
+    run(statements);
+  }
 
-    interpreter.interpret(statements);
+  private static List<Stmt> parse(String source) {
+    if (source.length() >= ParallelFrontEnd.THRESHOLD && ForkJoinPool.commonPool().getParallelism() > 1)
+      return new ParallelFrontEnd(ForkJoinPool.commonPool()).parse(source, symbols, reporter);
 
-    // Prints AST
-    // System.out.println(new AstPrinter().print(expression));
+    Scanner scanner = new Scanner(source, symbols);
+    TokenBuffer tokens = Telemetry.scan(scanner, source.length());
+    Parser parser = new Parser(tokens);
 
     // Prints tokens
-    // for (Token token : tokens) {
-    // System.out.println(token);
+    // for (int i = 0; i < tokens.size(); i++) {
+    // System.out.println(tokens.token(i));
     // }
+    return Telemetry.parse(parser, tokens.size());
+  }
+
+  /**
+   * Optimizes and runs statements that parsed without errors
+   */
+  private static void run(List<Stmt> statements) {
+    Optimizer optimizer = new Optimizer();
+    execute(optimizer.optimize(statements));
+    if (stats) {
+      out.flush();
+      System.err.println("[stats] constant folding eliminated " + optimizer.eliminated() + " nodes");
+      if (engine.equals("tree"))
+        System.err.println("[stats] jit compiled " + Jit.compiled.sum() + " statements, deoptimized " + Jit.deoptimized.sum());
+      if (budget != null)
+        System.err.println("[stats] heap peak " + budget.peakBytes() + " bytes");
+    }
+
+    // Prints AST
+    // System.out.println(new AstPrinter().print(expression));
+  }
+
+  /**
+   * Resolves optimized statements and runs them on the selected engine
+   */
+  private static void execute(List<Stmt> statements) {
+    if (engine.equals("vm")) {
+      new Resolver(vm.globals).resolve(statements);
+      vm.interpret(new Compiler().compile(statements));
+      return;
+    }
+
+    if (engine.equals("node")) {
+      new Resolver(nodeInterpreter.globals).resolve(statements);
+      nodeInterpreter.interpret(new NodeBuilder(nodeInterpreter, out).build(statements));
+      return;
+    }
+
+    if (engine.equals("closure")) {
+      new Resolver(closureInterpreter.globals).resolve(statements);
+      closureInterpreter.interpret(statements);
+      return;
+    }
+
+    Resolver resolver = new Resolver(interpreter.globals);
+    resolver.resolve(statements);
+
+    interpreter.interpret(statements, budget);
   }
 
   private static void runFile(String path) throws IOException {
     byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+    Telemetry.scripts.increment();
+    List<Stmt> statements = cache == null ? null : cache.load(bytes);
+    if (statements == null) {
+      statements = parse(new String(bytes, Charset.defaultCharset()));
+      if (!hadError && cache != null)
+        cache.store(bytes, statements);
+    }
+    if (!hadError)
+      run(statements);
+    out.flush();
     if (hadError)
       System.exit(65);
     if (hadRuntimeError)
       System.exit(70);
   }
 
-  static public void error(int line, String message) {
-    report(line, "", message);
+  /**
+   * Runs a file while it is being read, every top-level statement is executed
+   * as soon as it is parsed, so memory doesn't grow with the size of the
+   * script. After a syntax error nothing else runs, but the rest of the file
+   * is still parsed to report every error.
+   */
+  private static void runStream(String path) throws IOException {
+    Telemetry.scripts.increment();
+    Optimizer optimizer = new Optimizer();
+    try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(path)), Charset.defaultCharset())) {
+      Parser parser = new Parser(new Scanner(reader));
+      while (parser.hasNext()) {
+        Stmt statement = parser.next();
+        if (hadError)
+          continue;
+        execute(optimizer.optimize(Collections.singletonList(statement)));
+        if (hadRuntimeError)
+          break;
+      }
+    }
+    out.flush();
+    if (stats) {
+      System.err.println("[stats] constant folding eliminated " + optimizer.eliminated() + " nodes");
+      if (engine.equals("tree"))
+        System.err.println("[stats] jit compiled " + Jit.compiled.sum() + " statements, deoptimized " + Jit.deoptimized.sum());
+      if (budget != null)
+        System.err.println("[stats] heap peak " + budget.peakBytes() + " bytes");
+    }
+
+    if (hadError)
+      System.exit(65);
+    if (hadRuntimeError)
+      System.exit(70);
   }
 
-  private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] ERROR" + where + ": " + message);
-    hadError = true;
+  /**
+   * Parses a file into a FlatAst, statement by statement so the objects of
+   * the whole program never exist at once, and runs it decoding one statement
+   * at a time
+   */
+  private static void runFlat(String path) throws IOException {
+    Telemetry.scripts.increment();
+    Optimizer optimizer = new Optimizer();
+    FlatAst ast = new FlatAst();
+    try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(path)), Charset.defaultCharset())) {
+      Parser parser = new Parser(new Scanner(reader));
+      while (parser.hasNext()) {
+        Stmt statement = parser.next();
+        if (!hadError)
+          ast.add(optimizer.optimize(Collections.singletonList(statement)).get(0));
+      }
+    }
+    ast.trim();
+
+    for (int i = 0; i < ast.size() && !hadError && !hadRuntimeError; i++) {
+      execute(Collections.singletonList(ast.statement(i)));
+    }
+    out.flush();
+    if (stats) {
+      System.err.println("[stats] constant folding eliminated " + optimizer.eliminated() + " nodes");
+      System.err.printf("[stats] flat AST: %d nodes in %d bytes (%.1f bytes/node)%n", ast.nodes(), ast.bytes(),
+          ast.nodes() == 0 ? 0.0 : (double) ast.bytes() / ast.nodes());
+      if (budget != null)
+        System.err.println("[stats] heap peak " + budget.peakBytes() + " bytes");
+    }
+
+    if (hadError)
+      System.exit(65);
+    if (hadRuntimeError)
+      System.exit(70);
   }
 
-  static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end ", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
+  /**
+   * Runs a file, then again every time it changes. The file is kept in a
+   * Document, which only parses again the declarations an edit touched, so
+   * every statement before the first changed one is the same object that
+   * ran last time. Those are not run again: the globals the statements after
+   * them defined get back the values they had before, and only the rest of
+   * the file runs. Each run prints how long it took, from reading the file
+   * once it settled.
+   */
+  private static void runWatch(String path) throws IOException {
+    Path file = Paths.get(path).toAbsolutePath();
+    Document document = null;
+    String source = null;
+    // Statements that ran without errors, in order, and the value each one
+    // replaced in the global it defined
+    List<Stmt> ran = new ArrayList<>();
+    List<Object> replaced = new ArrayList<>();
+
+    try (WatchService watcher = file.getFileSystem().newWatchService()) {
+      file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      for (;;) {
+        long start = System.nanoTime();
+        String edited = source;
+        try {
+          edited = new String(Files.readAllBytes(file), Charset.defaultCharset());
+        } catch (NoSuchFileException e) {
+          // Saved by replacing it, the new one comes with its own event
+        }
+
+        if (edited != null && !edited.equals(source)) {
+          Telemetry.scripts.increment();
+          hadError = false;
+          hadRuntimeError = false;
+          List<Stmt> statements;
+          if (document == null) {
+            document = new Document(edited, reporter);
+            statements = document.statements();
+          } else {
+            statements = edit(document, source, edited);
+          }
+          source = edited;
+
+          if (hadError || statements.contains(null)) {
+            System.err.println("[watch] not run, the file has syntax errors");
+          } else {
+            int first = rerun(statements, ran, replaced);
+            int executed = ran.size() - first + (hadRuntimeError ? 1 : 0);
+            System.err.printf("[watch] ran %d of %d statements in %.2f ms%n", executed, statements.size(),
+                (System.nanoTime() - start) / 1e6);
+          }
+        }
+        awaitChange(watcher, file);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Applies the change between two versions of a source as one edit, from
+   * the first character that differs to the last
+   */
+  private static List<Stmt> edit(Document document, String before, String after) {
+    int shorter = Math.min(before.length(), after.length());
+    int prefix = 0;
+    while (prefix < shorter && before.charAt(prefix) == after.charAt(prefix))
+      prefix++;
+    int suffix = 0;
+    while (suffix < shorter - prefix
+        && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix))
+      suffix++;
+    return document.edit(prefix, before.length() - prefix - suffix,
+        after.substring(prefix, after.length() - suffix));
+  }
+
+  /**
+   * Runs the statements from the first one that didn't run last time on
+   *
+   * @return Index of that statement
+   */
+  private static int rerun(List<Stmt> statements, List<Stmt> ran, List<Object> replaced) {
+    int first = 0;
+    while (first < ran.size() && first < statements.size() && statements.get(first) == ran.get(first))
+      first++;
+
+    // Top-level statements only change the globals they define, so undoing
+    // those, last first, is the state right after the unchanged ones
+    Environment globals = interpreter.globals;
+    for (int i = ran.size() - 1; i >= first; i--) {
+      Token name = defined(ran.get(i));
+      // The function it declared is replaced by what runs next, its profiles
+      // would stay in the Interpreter for the whole session
+      if (ran.get(i) instanceof Stmt.Function)
+        interpreter.forget((LoxFunction) globals.value(name.lexeme));
+      if (name != null)
+        globals.define(name.lexeme, replaced.get(i));
+      ran.remove(i);
+      replaced.remove(i);
+    }
+
+    budget = newBudget();
+    Optimizer optimizer = new Optimizer();
+    for (int i = first; i < statements.size(); i++) {
+      Stmt statement = statements.get(i);
+      Token name = defined(statement);
+      Object value = name == null ? null : globals.value(name.lexeme);
+      execute(optimizer.optimize(Collections.singletonList(statement)));
+      if (hadRuntimeError)
+        break;
+      ran.add(statement);
+      replaced.add(value);
+    }
+    out.flush();
+    return first;
+  }
+
+  private static Token defined(Stmt statement) {
+    if (statement instanceof Stmt.Var)
+      return ((Stmt.Var) statement).name;
+    if (statement instanceof Stmt.Function)
+      return ((Stmt.Function) statement).name;
+    return null;
+  }
+
+  /**
+   * Waits for the file to change and then to stay unchanged for a while
+   */
+  private static void awaitChange(WatchService watcher, Path file) throws InterruptedException {
+    boolean changed = false;
+    WatchKey key = watcher.take();
+    while (key != null) {
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context()))
+          changed = true;
+      }
+      key.reset();
+      key = changed ? watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS) : watcher.take();
     }
   }
 
   static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "] at " + error.token.lexeme);
-    hadRuntimeError = true;
+    reporter.runtimeError(error.token.line, error.token.lexeme, error.getMessage());
   }
 }
@@ -0,0 +1,161 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * LoxEngine
+ * Entry point for running Lox from other Java code. Nothing here is static:
+ * the engine compiles sources into Programs, which are immutable and can be
+ * run by any number of threads at once, and every Context has its own
+ * globals, output and error reporter. Programs run on the tree-walking
+ * Interpreter.
+ *
+ * <pre>
+ * LoxEngine engine = new LoxEngine();
+ * LoxEngine.Program program = engine.compile(source, errors);
+ * if (program != null)
+ *   engine.newContext(out, errors).run(program);
+ * </pre>
+ *
+ * An engine is thread-safe, a context must only be used by one thread at a
+ * time. Untrusted programs can be run within a Budget, which another thread
+ * may cancel.
+ */
+public final class LoxEngine {
+
+  /**
+   * Scans, parses, optimizes and resolves a source
+   *
+   * @param errors Gets the syntax errors
+   * @return The program, null if there were syntax errors
+   */
+  public Program compile(String source, ErrorReporter errors) {
+    SyntaxErrors counter = new SyntaxErrors(errors);
+    TokenBuffer tokens = Telemetry.scan(new Scanner(source, new SymbolTable(), counter), source.length());
+    List<Stmt> statements = Telemetry.parse(new Parser(tokens, counter), tokens.size());
+    if (counter.count > 0)
+      return null;
+
+    statements = new Optimizer().optimize(statements);
+    Environment globals = new Environment();
+    new Resolver(globals).resolve(statements);
+    return new Program(statements, globals);
+  }
+
+  /**
+   * @param out    Where print statements go
+   * @param errors Gets the syntax and runtime errors of what the context runs
+   */
+  public Context newContext(PrintStream out, ErrorReporter errors) {
+    return new Context(this, out, errors);
+  }
+
+  /**
+   * Program
+   * A compiled source. The statements were resolved against the program's
+   * own globals when compiled, and are only read when they run.
+   */
+  public static final class Program {
+    final List<Stmt> statements;
+    // Slots of the globals the statements were resolved to, all undefined.
+    // Every run starts from a copy of it.
+    final Environment globals;
+
+    private Program(List<Stmt> statements, Environment globals) {
+      this.statements = Collections.unmodifiableList(statements);
+      this.globals = globals;
+    }
+  }
+
+  /**
+   * Context
+   * Globals that live across the programs run in it, like the REPL, plus
+   * where their output and errors go
+   */
+  public static final class Context {
+    private final LoxEngine engine;
+    private final PrintStream out;
+    private final ErrorReporter errors;
+    private Environment globals = new Environment();
+
+    private Context(LoxEngine engine, PrintStream out, ErrorReporter errors) {
+      this.engine = engine;
+      this.out = out;
+      this.errors = errors;
+    }
+
+    /**
+     * Runs a program, seeing the globals defined by the programs run before
+     *
+     * @return false if a runtime error stopped it
+     */
+    public boolean run(Program program) {
+      return run(program, null);
+    }
+
+    /**
+     * Runs a program, stopping it with a runtime error at the statement that
+     * would go over the budget
+     *
+     * @param budget Limits of this run, null for none
+     * @return false if a runtime error or the budget stopped it
+     */
+    public boolean run(Program program, Budget budget) {
+      // The program's slots with this context's values in them
+      Environment environment = new Environment(program.globals);
+      environment.defineAll(globals);
+      globals = environment;
+      Telemetry.scripts.increment();
+      return new Interpreter(environment, OutputSink.of(out), errors).interpret(program.statements, budget);
+    }
+
+    /**
+     * Compiles and runs a source
+     *
+     * @return false if it had a syntax or runtime error
+     */
+    public boolean run(String source) {
+      return run(source, null);
+    }
+
+    /**
+     * Compiles and runs a source within a budget, null for none
+     *
+     * @return false if it had a syntax or runtime error or went over the budget
+     */
+    public boolean run(String source, Budget budget) {
+      Program program = engine.compile(source, errors);
+      if (program == null) {
+        Telemetry.scripts.increment();
+        return false;
+      }
+      return run(program, budget);
+    }
+  }
+
+  /**
+   * Passes syntax errors on, counting them
+   */
+  private static class SyntaxErrors implements ErrorReporter {
+    private final ErrorReporter errors;
+    int count = 0;
+
+    SyntaxErrors(ErrorReporter errors) {
+      this.errors = errors;
+    }
+
+    @Override
+    public void syntaxError(int line, String where, String message) {
+      count++;
+      Telemetry.syntaxErrors.increment();
+      errors.syntaxError(line, where, message);
+    }
+
+    @Override
+    public void runtimeError(int line, String lexeme, String message) {
+      errors.runtimeError(line, lexeme, message);
+    }
+  }
+}
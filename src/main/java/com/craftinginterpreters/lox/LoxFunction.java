@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * LoxFunction
+ * Value of a function declaration. Functions are only declared at the top
+ * level and see nothing but their frame and the globals, so the declaration
+ * is all there is to keep.
+ */
+final class LoxFunction {
+  final Stmt.Function declaration;
+
+  LoxFunction(Stmt.Function declaration) {
+    this.declaration = declaration;
+  }
+
+  @Override
+  public String toString() {
+    return "<fn " + declaration.name.lexeme + ">";
+  }
+}
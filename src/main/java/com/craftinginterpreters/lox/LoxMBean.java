@@ -0,0 +1,25 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * LoxMBean
+ * Counters of everything run in this JVM since it started, published as
+ * com.craftinginterpreters.lox:type=Lox. Public only because JMX reads it
+ * reflectively.
+ */
+public interface LoxMBean {
+
+  long getScriptsRun();
+
+  long getTokensScanned();
+
+  long getStatementsExecuted();
+
+  long getSyntaxErrors();
+
+  long getRuntimeErrors();
+
+  /**
+   * Bytes written by print statements, line separators included
+   */
+  long getPrintBytes();
+}
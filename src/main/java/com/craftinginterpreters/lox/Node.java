@@ -0,0 +1,44 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Node
+ * Base of the executable tree used by --engine=node. Nodes can replace
+ * themselves in their parent with a version specialised for the values they
+ * have seen.
+ */
+abstract class Node {
+  Node parent;
+  // The node that took this one's place. A recursive call can rewrite a node
+  // while an outer call is still executing it, the outer call then finds the
+  // node here instead of rewriting it a second time.
+  Node replacedBy;
+
+  <T extends Node> T adopt(T child) {
+    child.parent = this;
+    return child;
+  }
+
+  /**
+   * Swaps this node for the replacement in its parent
+   *
+   * @return the replacement, so callers can keep executing it
+   */
+  <T extends Node> T replace(T replacement) {
+    if (replacedBy != null)
+      throw new IllegalStateException(getClass().getSimpleName() + " was already replaced.");
+    replacement.parent = parent;
+    parent.replaceChild(this, replacement);
+    replacedBy = replacement;
+    return replacement;
+  }
+
+  /**
+   * Error for a rewrite of a node this one does not hold
+   */
+  IllegalStateException notAChild(Node child) {
+    return new IllegalStateException(child.getClass().getSimpleName() + " is not a child of "
+        + getClass().getSimpleName() + ".");
+  }
+
+  abstract void replaceChild(Node child, Node replacement);
+}
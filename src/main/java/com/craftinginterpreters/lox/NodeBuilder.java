@@ -0,0 +1,160 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.craftinginterpreters.lox.Expr.Binary;
+import com.craftinginterpreters.lox.Expr.Call;
+import com.craftinginterpreters.lox.Expr.Comma;
+import com.craftinginterpreters.lox.Expr.Grouping;
+import com.craftinginterpreters.lox.Expr.Literal;
+import com.craftinginterpreters.lox.Expr.Ternary;
+import com.craftinginterpreters.lox.Expr.Unary;
+import com.craftinginterpreters.lox.Expr.Variable;
+
+/**
+ * NodeBuilder
+ * Builds the executable node tree of resolved statements
+ */
+public class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+
+  /**
+   * Value of a function declaration, with the nodes of its body
+   */
+  static final class Function {
+    final Stmt.Function declaration;
+    final int arity;
+    final StmtNode[] body;
+    // Value of the call, evaluated after the body
+    final StmtNode.Return result;
+
+    Function(Stmt.Function declaration, StmtNode[] body, StmtNode.Return result) {
+      this.declaration = declaration;
+      this.arity = declaration.params.size();
+      this.body = body;
+      this.result = result;
+    }
+
+    @Override
+    public String toString() {
+      return "<fn " + declaration.name.lexeme + ">";
+    }
+  }
+
+  private final NodeInterpreter runtime;
+  private final OutputSink out;
+
+  NodeBuilder(NodeInterpreter runtime) {
+    this(runtime, OutputSink.of(null));
+  }
+
+  NodeBuilder(NodeInterpreter runtime, OutputSink out) {
+    this.runtime = runtime;
+    this.out = out;
+  }
+
+  List<StmtNode> build(List<Stmt> statements) {
+    List<StmtNode> nodes = new ArrayList<>(statements.size());
+    for (Stmt statement : statements) {
+      nodes.add(statement.accept(this));
+    }
+    return nodes;
+  }
+
+  @Override
+  public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+    return new StmtNode.Expression(stmt.expr.accept(this));
+  }
+
+  @Override
+  public StmtNode visitPrintStmt(Stmt.Print stmt) {
+    return new StmtNode.Print(stmt.expr.accept(this), out);
+  }
+
+  /**
+   * A body runs its statements up to the first return, whose value is the
+   * value of the call. There are no blocks, so the statements after it never
+   * run and are not built.
+   */
+  @Override
+  public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+    List<StmtNode> body = new ArrayList<>();
+    ExprNode result = new ExprNode.Literal(null);
+    for (Stmt statement : stmt.body) {
+      if (statement instanceof Stmt.Return) {
+        Expr value = ((Stmt.Return) statement).value;
+        if (value != null)
+          result = value.accept(this);
+        break;
+      }
+      body.add(statement.accept(this));
+    }
+    Function function = new Function(stmt, body.toArray(new StmtNode[0]), new StmtNode.Return(result));
+    return new StmtNode.Var(stmt.name.lexeme, stmt.slot, new ExprNode.Literal(function));
+  }
+
+  @Override
+  public StmtNode visitReturnStmt(Stmt.Return stmt) {
+    // Only in function bodies, which visitFunctionStmt() builds
+    throw new IllegalStateException("Return outside of a function.");
+  }
+
+  @Override
+  public StmtNode visitVarStmt(Stmt.Var stmt) {
+    ExprNode initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+    return new StmtNode.Var(stmt.name.lexeme, stmt.slot, initializer);
+  }
+
+  @Override
+  public ExprNode visitBinaryExpr(Binary expr) {
+    return new BinaryNode.Uninitialized(expr.operator, expr.left.accept(this), expr.right.accept(this));
+  }
+
+  @Override
+  public ExprNode visitGroupingExpr(Grouping expr) {
+    // Groupings only matter to the parser
+    return expr.expression.accept(this);
+  }
+
+  @Override
+  public ExprNode visitLiteralExpr(Literal expr) {
+    return new ExprNode.Literal(expr.value);
+  }
+
+  @Override
+  public ExprNode visitUnaryExpr(Unary expr) {
+    ExprNode right = expr.right.accept(this);
+    if (expr.operator.type == TokenType.MINUS) {
+      return new ExprNode.Negate(expr.operator, right);
+    }
+    return new ExprNode.Not(right);
+  }
+
+  @Override
+  public ExprNode visitVariableExpr(Variable expr) {
+    return new ExprNode.Variable(expr.name, expr.depth, expr.slot);
+  }
+
+  @Override
+  public ExprNode visitCommaExpr(Comma expr) {
+    ExprNode[] exprs = new ExprNode[expr.exprs.size()];
+    for (int i = 0; i < exprs.length; i++) {
+      exprs[i] = expr.exprs.get(i).accept(this);
+    }
+    return new ExprNode.Comma(exprs);
+  }
+
+  @Override
+  public ExprNode visitTernaryExpr(Ternary expr) {
+    return new ExprNode.Ternary(expr.condition.accept(this), expr.then.accept(this), expr.elseThen.accept(this));
+  }
+
+  @Override
+  public ExprNode visitCallExpr(Call expr) {
+    ExprNode[] arguments = new ExprNode[expr.arguments.size()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = expr.arguments.get(i).accept(this);
+    }
+    return new ExprNode.Call(runtime, expr.paren, expr.callee.accept(this), arguments);
+  }
+}
@@ -0,0 +1,55 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * NodeInterpreter
+ * Runs the self-specialising node tree built by the NodeBuilder
+ */
+public class NodeInterpreter {
+
+  final Environment globals = new Environment();
+
+  // Call frames, indexed by the number of calls in progress, reused like the
+  // Interpreter's
+  private Environment[] frames = new Environment[16];
+  private int calls = 0;
+
+  void interpret(List<StmtNode> statements) {
+    Telemetry.InterpretEvent event = Telemetry.beginInterpret();
+    int executed = 0;
+    try {
+      for (StmtNode statement : statements) {
+        statement.execute(globals);
+        executed++;
+      }
+    } catch (RuntimeError e) {
+      Telemetry.runtimeErrors.increment();
+      Lox.runtimeError(e);
+    } finally {
+      Telemetry.interpreted(event, "node", executed);
+    }
+  }
+
+  /**
+   * Frame for a new call, the calls in its arguments take the frames above
+   */
+  Environment enter(int size) {
+    if (calls == frames.length) {
+      frames = Arrays.copyOf(frames, calls * 2);
+    }
+    Environment frame = frames[calls];
+    if (frame == null || frame.capacity() < size) {
+      frame = new Environment(globals, Math.max(size, 8));
+      frames[calls] = frame;
+    }
+    calls++;
+    return frame;
+  }
+
+  void exit(Environment frame, int size) {
+    calls--;
+    frame.clear(size);
+  }
+}
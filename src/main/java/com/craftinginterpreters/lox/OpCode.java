@@ -0,0 +1,46 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * OpCode
+ * Instruction set of the VM. Operands follow the opcode byte, all of them are
+ * 3 bytes wide (u24) so large generated scripts never run out of constants.
+ * `tok` operands index the Token in the constant pool and are only read when
+ * the instruction fails, to build the RuntimeError. Jump targets are offsets
+ * in the code.
+ */
+final class OpCode {
+  static final byte CONSTANT = 0; // idx
+  static final byte NIL = 1;
+  static final byte TRUE = 2;
+  static final byte FALSE = 3;
+  static final byte POP = 4;
+  static final byte GET_GLOBAL = 5; // slot, tok
+  static final byte GET_GLOBAL_NAMED = 6; // tok
+  static final byte DEFINE_GLOBAL = 7; // slot
+  static final byte DEFINE_GLOBAL_NAMED = 8; // idx of the name
+  static final byte EQUAL = 9;
+  static final byte NOT_EQUAL = 10;
+  static final byte GREATER = 11; // tok
+  static final byte GREATER_EQUAL = 12; // tok
+  static final byte LESS = 13; // tok
+  static final byte LESS_EQUAL = 14; // tok
+  static final byte ADD = 15; // tok
+  static final byte SUBTRACT = 16; // tok
+  static final byte MULTIPLY = 17; // tok
+  static final byte DIVIDE = 18; // tok
+  static final byte NOT = 19;
+  static final byte NEGATE = 20; // tok
+  static final byte PRINT = 21;
+  static final byte RETURN = 22;
+  static final byte JUMP = 23; // target
+  static final byte JUMP_IF_FALSE = 24; // target, pops the condition
+  static final byte DISCARD = 25; // drops a value inside an expression
+  static final byte GET_LOCAL = 26; // slot, tok
+  static final byte DEFINE_LOCAL = 27; // slot
+  static final byte CHECK_CALL = 28; // count, tok: the callee under the arguments to come
+  static final byte CALL = 29; // count, tok: the callee and its arguments become the value
+  static final byte RETURN_VALUE = 30; // ends a function body
+
+  private OpCode() {
+  }
+}
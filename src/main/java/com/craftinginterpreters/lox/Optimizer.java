@@ -0,0 +1,177 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.craftinginterpreters.lox.Expr.Binary;
+import com.craftinginterpreters.lox.Expr.Call;
+import com.craftinginterpreters.lox.Expr.Comma;
+import com.craftinginterpreters.lox.Expr.Grouping;
+import com.craftinginterpreters.lox.Expr.Literal;
+import com.craftinginterpreters.lox.Expr.Ternary;
+import com.craftinginterpreters.lox.Expr.Unary;
+import com.craftinginterpreters.lox.Expr.Variable;
+
+/**
+ * Optimizer
+ * Constant folding pass that runs right after the Parser. Unary and binary
+ * expressions whose operands are all literals are evaluated once here and
+ * replaced by a Literal, and groupings are dropped since the tree already
+ * encodes precedence. Anything that fails at runtime, like a division by
+ * zero, is left unfolded so the error still happens when the statement runs.
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+  // Evaluates the folded expressions, literals never touch its environment
+  private final Interpreter folder = new Interpreter();
+  private int eliminated = 0;
+
+  List<Stmt> optimize(List<Stmt> statements) {
+    List<Stmt> optimized = new ArrayList<>(statements.size());
+    for (Stmt statement : statements) {
+      optimized.add(statement == null ? null : statement.accept(this));
+    }
+    return optimized;
+  }
+
+  /**
+   * @return How many Expr nodes the pass removed so far
+   */
+  int eliminated() {
+    return eliminated;
+  }
+
+  private Expr optimize(Expr expr) {
+    return expr.accept(this);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    Expr expr = optimize(stmt.expr);
+    return expr == stmt.expr ? stmt : sameLine(new Stmt.Expression(expr), stmt);
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    Expr expr = optimize(stmt.expr);
+    return expr == stmt.expr ? stmt : sameLine(new Stmt.Print(expr), stmt);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    if (stmt.initializer == null)
+      return stmt;
+    Expr initializer = optimize(stmt.initializer);
+    return initializer == stmt.initializer ? stmt : sameLine(new Stmt.Var(stmt.name, initializer), stmt);
+  }
+
+  @Override
+  public Stmt visitFunctionStmt(Stmt.Function stmt) {
+    List<Stmt> body = optimize(stmt.body);
+    return body.equals(stmt.body) ? stmt : sameLine(new Stmt.Function(stmt.name, stmt.params, body), stmt);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    if (stmt.value == null)
+      return stmt;
+    Expr value = optimize(stmt.value);
+    return value == stmt.value ? stmt : sameLine(new Stmt.Return(stmt.keyword, value), stmt);
+  }
+
+  private static Stmt sameLine(Stmt copy, Stmt original) {
+    copy.line = original.line;
+    return copy;
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Binary expr) {
+    Expr left = optimize(expr.left);
+    Expr right = optimize(expr.right);
+    Expr folded = left == expr.left && right == expr.right ? expr : new Binary(left, expr.operator, right);
+
+    if (left instanceof Literal && right instanceof Literal) {
+      return fold(folded, 2);
+    }
+    return folded;
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Grouping expr) {
+    eliminated++;
+    return optimize(expr.expression);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Unary expr) {
+    Expr right = optimize(expr.right);
+    Expr folded = right == expr.right ? expr : new Unary(expr.operator, right);
+
+    if (right instanceof Literal) {
+      return fold(folded, 1);
+    }
+    return folded;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitCallExpr(Call expr) {
+    Expr callee = optimize(expr.callee);
+    List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+    boolean changed = callee != expr.callee;
+    for (Expr argument : expr.arguments) {
+      Expr optimized = optimize(argument);
+      changed |= optimized != argument;
+      arguments.add(optimized);
+    }
+    return changed ? new Call(callee, expr.paren, arguments) : expr;
+  }
+
+  @Override
+  public Expr visitCommaExpr(Comma expr) {
+    List<Expr> exprs = new ArrayList<>(expr.exprs.size());
+    boolean changed = false;
+    for (Expr e : expr.exprs) {
+      Expr optimized = optimize(e);
+      changed |= optimized != e;
+      exprs.add(optimized);
+    }
+    return changed ? new Comma(exprs) : expr;
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Ternary expr) {
+    Expr condition = optimize(expr.condition);
+    Expr then = optimize(expr.then);
+    Expr elseThen = optimize(expr.elseThen);
+    if (condition == expr.condition && then == expr.then && elseThen == expr.elseThen)
+      return expr;
+    return new Ternary(condition, then, elseThen, expr.operator);
+  }
+
+  /**
+   * Replaces an expression over literals by its value
+   *
+   * @param expr     Expression whose operands are literals
+   * @param operands Number of literal operands that go away with it
+   */
+  private Expr fold(Expr expr, int operands) {
+    try {
+      Object value = folder.evaluate(expr);
+      eliminated += operands;
+      // Literals are always flat, the cache and the VM's constants expect it
+      return new Literal(value instanceof Rope ? value.toString() : value);
+    } catch (RuntimeError error) {
+      return expr;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+/**
+ * OutputSink
+ * Where print statements write their lines. A sink may hold lines back, so
+ * whoever writes anything else to the same place (an error on stderr going
+ * to the same terminal, a REPL prompt) flushes it first.
+ */
+interface OutputSink {
+
+  void println(String text);
+
+  void flush();
+
+  /**
+   * @param stream null to print to System.out as it is at the time of each
+   *               print, which is what benchmarks redirecting it expect
+   */
+  static OutputSink of(PrintStream stream) {
+    return new Stream(stream);
+  }
+
+  /**
+   * Every line goes to a PrintStream right away
+   */
+  final class Stream implements OutputSink {
+    private final PrintStream stream;
+
+    private Stream(PrintStream stream) {
+      this.stream = stream;
+    }
+
+    @Override
+    public void println(String text) {
+      (stream != null ? stream : System.out).println(text);
+      Telemetry.printed(text);
+    }
+
+    @Override
+    public void flush() {
+      (stream != null ? stream : System.out).flush();
+    }
+  }
+}
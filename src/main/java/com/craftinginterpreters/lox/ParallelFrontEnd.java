@@ -0,0 +1,308 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ParallelFrontEnd
+ * Scans and parses a large source on several cores, with the same tokens,
+ * statements, lines and errors as Scanner.scanTokens and Parser.parse.
+ *
+ * Scanning: the source is cut into chunks and every chunk is scanned as if
+ * nothing were open at its start, with lines counted from 1 and errors held
+ * back. Then, in order, a scanner re-scans from the last token accepted so
+ * far until one of its tokens starts where a chunk's token started, from
+ * there on both read the same characters in the same state (a token start is
+ * never inside a string or comment), so the rest of that chunk is taken with
+ * its lines moved. A chunk that began inside a string or a comment just
+ * takes a few more tokens to line up.
+ *
+ * Every scanner interns names in the one SymbolTable it is given, so a
+ * name is the same String instance in every chunk, as it is when scanned
+ * sequentially.
+ *
+ * Parsing works the same way on the tokens: segments starting after a ';'
+ * are parsed declaration by declaration in parallel, and a segment is taken
+ * from the first of its declarations that starts where the previous one
+ * ended, the declarations in between being parsed again.
+ */
+final class ParallelFrontEnd {
+  // Below this it isn't worth it
+  static final int THRESHOLD = 1 << 20;
+  private static final int MIN_CHUNK = 1 << 16;
+  private static final int MIN_SEGMENT = 1 << 14;
+
+  private final ForkJoinPool pool;
+
+  ParallelFrontEnd(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * An error held back until it is known to be one the sequential path would
+   * report too
+   */
+  private static class Diagnostic {
+    final int at;
+    final int line;
+    final String where;
+    final String message;
+
+    Diagnostic(int at, int line, String where, String message) {
+      this.at = at;
+      this.line = line;
+      this.where = where;
+      this.message = message;
+    }
+  }
+
+  /**
+   * Collects syntax errors with the number of tokens scanned (or declarations
+   * parsed) when they were reported
+   */
+  private static class Deferred implements ErrorReporter {
+    final List<Diagnostic> diagnostics = new ArrayList<>();
+    TokenBuffer tokens;
+    int at = 0;
+
+    @Override
+    public void syntaxError(int line, String where, String message) {
+      diagnostics.add(new Diagnostic(tokens != null ? tokens.size() : at, line, where, message));
+    }
+
+    @Override
+    public void runtimeError(int line, String lexeme, String message) {
+      throw new IllegalStateException("Runtime error while parsing.");
+    }
+  }
+
+  private static class Chunk {
+    TokenBuffer tokens;
+    final Deferred errors = new Deferred();
+  }
+
+  private static class Segment {
+    final List<Stmt> statements = new ArrayList<>();
+    int[] starts = new int[64];
+    // Index of the token after the last declaration
+    int end;
+    final Deferred errors = new Deferred();
+  }
+
+  /**
+   * @param symbols Where the names are interned, shared by all the chunks
+   */
+  List<Stmt> parse(String source, SymbolTable symbols, ErrorReporter reporter) {
+    List<Diagnostic> errors = new ArrayList<>();
+    Telemetry.ScanEvent scanEvent = Telemetry.beginScan();
+    TokenBuffer tokens = scan(source.toCharArray(), symbols, errors);
+    Telemetry.scanned(scanEvent, source.length(), tokens.size());
+
+    Telemetry.ParseEvent parseEvent = Telemetry.beginParse();
+    List<Stmt> statements = parse(tokens, errors);
+    Telemetry.parsed(parseEvent, tokens.size(), statements.size());
+    for (Diagnostic error : errors) {
+      reporter.syntaxError(error.line, error.where, error.message);
+    }
+    return statements;
+  }
+
+  private int pieces() {
+    return pool.getParallelism() * 4;
+  }
+
+  private TokenBuffer scan(char[] source, SymbolTable symbols, List<Diagnostic> errors) {
+    // Chunk k is [bounds[k], bounds[k + 1]), cut after a newline
+    int size = Math.max(MIN_CHUNK, source.length / pieces());
+    int[] bounds = new int[source.length / size + 2];
+    int count = 0;
+    for (int at = 0; at < source.length;) {
+      bounds[count++] = at;
+      at = Math.min(at + size, source.length);
+      while (at < source.length && source[at - 1] != '\n')
+        at++;
+    }
+    bounds[count] = source.length;
+    final int chunks = Math.max(count, 1);
+
+    Chunk[] scanned = new Chunk[chunks];
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (int k = 0; k < chunks; k++) {
+      final int index = k;
+      tasks.add(pool.submit(() -> {
+        scanned[index] = scanChunk(source, symbols, bounds[index], index == chunks - 1 ? -1 : bounds[index + 1]);
+      }));
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+
+    TokenBuffer tokens = new TokenBuffer(source);
+    accept(scanned[0], 0, 0, tokens, errors, true);
+    int next = 1;
+    while (next < chunks) {
+      // Scan again from the start of the last token taken
+      int last = tokens.size() - 1;
+      int from = last >= 0 ? tokens.start(last) : 0;
+      int line = last >= 0 ? startLine(source, tokens, last) : 1;
+      tokens.truncate(Math.max(last, 0));
+
+      Deferred bridgeErrors = new Deferred();
+      Scanner bridge = new Scanner(source, from, line, symbols, bridgeErrors);
+      TokenBuffer bridged = bridge.tokens();
+      boolean lined = false;
+      for (;;) {
+        int index = bridged.size();
+        boolean more = bridge.scanNext();
+        int start = bridged.start(index);
+        int k = chunkOf(bounds, chunks, start);
+        if (k >= next) {
+          Chunk chunk = scanned[k];
+          int j = chunk.tokens.search(start);
+          if (j >= 0 && chunk.tokens.type(j) == bridged.type(index)
+              && chunk.tokens.length(j) == bridged.length(index)) {
+            tokens.append(bridged, 0, index, 0);
+            errors.addAll(bridgeErrors.diagnostics);
+            accept(chunk, j, bridged.line(index) - chunk.tokens.line(j), tokens, errors, false);
+            next = k + 1;
+            lined = true;
+            break;
+          }
+        }
+        if (!more) {
+          // Ran to the end of the source without lining up
+          tokens.append(bridged, 0, bridged.size(), 0);
+          errors.addAll(bridgeErrors.diagnostics);
+          break;
+        }
+      }
+      if (!lined)
+        break;
+    }
+    return tokens;
+  }
+
+  /**
+   * Scans the tokens that start in [from, to), or up to the end of the
+   * source if to is -1
+   */
+  private static Chunk scanChunk(char[] source, SymbolTable symbols, int from, int to) {
+    Chunk chunk = new Chunk();
+    Scanner scanner = new Scanner(source, from, 1, symbols, chunk.errors);
+    chunk.tokens = scanner.tokens();
+    chunk.errors.tokens = chunk.tokens;
+    while (scanner.scanNext()) {
+      if (to != -1 && chunk.tokens.start(chunk.tokens.size() - 1) >= to) {
+        chunk.tokens.truncate(chunk.tokens.size() - 1);
+        return chunk;
+      }
+    }
+    // Only EOF is left, it belongs to the last chunk
+    if (to != -1)
+      chunk.tokens.truncate(chunk.tokens.size() - 1);
+    return chunk;
+  }
+
+  /**
+   * Takes a chunk's tokens from one on. Its errors before that token were
+   * found again by the re-scan, and the ones after its last token will be.
+   */
+  private static void accept(Chunk chunk, int from, int lineShift, TokenBuffer tokens, List<Diagnostic> errors,
+      boolean first) {
+    int last = chunk.tokens.size() - 1;
+    for (Diagnostic error : chunk.errors.diagnostics) {
+      if ((first || error.at > from) && error.at <= last) {
+        errors.add(new Diagnostic(error.at, error.line + lineShift, error.where, error.message));
+      }
+    }
+    tokens.append(chunk.tokens, from, chunk.tokens.size(), lineShift);
+  }
+
+  // A string token has the line it ends on
+  private static int startLine(char[] source, TokenBuffer tokens, int index) {
+    int line = tokens.line(index);
+    for (int i = tokens.start(index); i < tokens.start(index) + tokens.length(index); i++) {
+      if (source[i] == '\n')
+        line--;
+    }
+    return line;
+  }
+
+  private static int chunkOf(int[] bounds, int chunks, int position) {
+    int k = Arrays.binarySearch(bounds, 0, chunks, position);
+    return k >= 0 ? k : -k - 2;
+  }
+
+  private List<Stmt> parse(TokenBuffer tokens, List<Diagnostic> errors) {
+    // Segment k starts at token bounds[k], right after a ';'
+    int size = Math.max(MIN_SEGMENT, tokens.size() / pieces());
+    int[] bounds = new int[tokens.size() / size + 2];
+    int count = 0;
+    for (int at = 0; at < tokens.size();) {
+      bounds[count++] = at;
+      at = Math.min(at + size, tokens.size());
+      while (at < tokens.size() && tokens.type(at - 1) != TokenType.SEMICOLON)
+        at++;
+    }
+    final int segments = count;
+
+    Segment[] parsed = new Segment[segments];
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (int k = 0; k < segments; k++) {
+      final int index = k;
+      tasks.add(pool.submit(() -> {
+        parsed[index] = parseSegment(tokens, bounds[index], index == segments - 1 ? -1 : bounds[index + 1]);
+      }));
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+
+    List<Stmt> statements = new ArrayList<>();
+    int position = 0;
+    while (tokens.type(position) != TokenType.EOF) {
+      Segment segment = parsed[chunkOf(bounds, segments, position)];
+      int j = Arrays.binarySearch(segment.starts, 0, segment.statements.size(), position);
+      if (j >= 0) {
+        for (Diagnostic error : segment.errors.diagnostics) {
+          if (error.at >= j)
+            errors.add(error);
+        }
+        statements.addAll(segment.statements.subList(j, segment.statements.size()));
+        position = segment.end;
+        continue;
+      }
+
+      // Not where a declaration of the segment started, parse one again
+      Deferred again = new Deferred();
+      Parser parser = new Parser(tokens, position, again);
+      statements.add(parser.next());
+      errors.addAll(again.diagnostics);
+      position = parser.position();
+    }
+    return statements;
+  }
+
+  /**
+   * Parses the declarations that start in [from, to), or up to the end if to
+   * is -1
+   */
+  private static Segment parseSegment(TokenBuffer tokens, int from, int to) {
+    Segment segment = new Segment();
+    Parser parser = new Parser(tokens, from, segment.errors);
+    int count = 0;
+    while (parser.hasNext() && (to == -1 || parser.position() < to)) {
+      if (count == segment.starts.length)
+        segment.starts = Arrays.copyOf(segment.starts, count * 2);
+      segment.starts[count] = parser.position();
+      segment.errors.at = count;
+      segment.statements.add(parser.next());
+      count++;
+    }
+    segment.end = parser.position();
+    return segment;
+  }
+}
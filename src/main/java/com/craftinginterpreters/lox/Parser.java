@@ -14,12 +14,48 @@ public class Parser {
   private static class ParseError extends RuntimeException {
   }
 
-  private final List<Token> tokens;
+  private final TokenBuffer tokens;
   // Points to the next token to be parsed
   private int current = 0;
+  // Set when tokens are pulled from the scanner as they are needed
+  private final Scanner scanner;
+  private final ErrorReporter reporter;
+  // Set while parsing a function body
+  private boolean inFunction = false;
+
+  Parser(TokenBuffer tokens) {
+    this(tokens, Lox.reporter);
+  }
+
+  Parser(TokenBuffer tokens, ErrorReporter reporter) {
+    this.tokens = tokens;
+    this.scanner = null;
+    this.reporter = reporter;
+  }
+
+  /**
+   * Parser that starts at a token other than the first one, which must be the
+   * start of a declaration
+   */
+  Parser(TokenBuffer tokens, int from) {
+    this(tokens, from, Lox.reporter);
+  }
 
-  Parser(List<Token> tokens) {
+  Parser(TokenBuffer tokens, int from, ErrorReporter reporter) {
     this.tokens = tokens;
+    this.scanner = null;
+    this.reporter = reporter;
+    this.current = from;
+  }
+
+  /**
+   * Parser that asks the scanner for tokens as it goes, and forgets them once
+   * their declaration is parsed
+   */
+  Parser(Scanner scanner) {
+    this.tokens = scanner.tokens();
+    this.scanner = scanner;
+    this.reporter = Lox.reporter;
   }
 
   // Parses a singular expression
@@ -32,12 +68,38 @@ public class Parser {
   // }
   List<Stmt> parse() {
     List<Stmt> statements = new ArrayList<>();
-    while (!isAtEnd()) {
-      statements.add(declaration());
+    while (hasNext()) {
+      statements.add(next());
     }
     return statements;
   }
 
+  boolean hasNext() {
+    return !isAtEnd();
+  }
+
+  /**
+   * Parses only the next top-level declaration, for callers that run each
+   * statement as soon as it is parsed
+   *
+   * @return the declaration, null if it had a syntax error
+   */
+  Stmt next() {
+    if (scanner != null && current > 1) {
+      // Only previous() is ever looked at again
+      tokens.discard(current - 1);
+      current = 1;
+    }
+    return declaration();
+  }
+
+  /**
+   * Index of the next token to be parsed
+   */
+  int position() {
+    return current;
+  }
+
   // This functions represents this rule:
   // expression → equality
   private Expr expression() {
@@ -45,11 +107,12 @@ public class Parser {
   }
 
   private Stmt declaration() {
+    peekType();
+    int line = tokens.line(current);
     try {
-      if (match(VAR))
-        return varDeclaration();
-
-      return statement();
+      Stmt stmt = match(FUN) ? function() : match(VAR) ? varDeclaration() : statement();
+      stmt.line = line;
+      return stmt;
     } catch (ParseError error) {
       synchronize();
       return null;
@@ -59,6 +122,8 @@ public class Parser {
   private Stmt statement() {
     if (match(PRINT))
       return printStatement();
+    if (match(RETURN))
+      return returnStatement();
 
     return expressionStatement();
   }
@@ -75,8 +140,63 @@ public class Parser {
     return new Stmt.Print(value);
   }
 
+  // returnStmt → "return" expression? ";" ;
+  private Stmt returnStatement() {
+    Token keyword = previous();
+    if (!inFunction)
+      error(keyword, "Can't return from top-level code.");
+    Expr value = null;
+    if (!check(SEMICOLON)) {
+      value = expression();
+    }
+    consume(SEMICOLON, "Expect ';' after return value.");
+    return new Stmt.Return(keyword, value);
+  }
+
+  // funDecl → "fun" IDENTIFIER "(" parameters? ")" "{" declaration* "}" ;
+  // Functions are only declared at the top level, so a call frame is never
+  // captured and can be reused once the call returns.
+  private Stmt function() {
+    Token keyword = previous();
+    consume(IDENTIFIER, "Expect function name.");
+    Token name = previous();
+    if (inFunction)
+      error(keyword, "Functions can only be declared at the top level.");
+
+    consume(LEFT_PAREN, "Expect '(' after function name.");
+    List<Token> params = new ArrayList<>();
+    if (!check(RIGHT_PAREN)) {
+      do {
+        if (params.size() >= 255)
+          error(peek(), "Can't have more than 255 parameters.");
+        consume(IDENTIFIER, "Expect parameter name.");
+        for (Token param : params) {
+          if (param.lexeme.equals(previous().lexeme))
+            error(previous(), "Already a parameter with this name.");
+        }
+        params.add(previous());
+      } while (match(COMMA));
+    }
+    consume(RIGHT_PAREN, "Expect ')' after parameters.");
+
+    consume(LEFT_BRACE, "Expect '{' before function body.");
+    boolean enclosing = inFunction;
+    inFunction = true;
+    List<Stmt> body = new ArrayList<>();
+    try {
+      while (!check(RIGHT_BRACE) && !isAtEnd()) {
+        body.add(declaration());
+      }
+    } finally {
+      inFunction = enclosing;
+    }
+    consume(RIGHT_BRACE, "Expect '}' after function body.");
+    return new Stmt.Function(name, params, body);
+  }
+
   private Stmt varDeclaration() {
-    Token name = consume(IDENTIFIER, "Expect variable name.");
+    consume(IDENTIFIER, "Expect variable name.");
+    Token name = previous();
 
     Expr initializer = null;
     if (match(EQUAL)) {
@@ -178,14 +298,37 @@ public class Parser {
     return expr;
   }
 
-  // unary → ( "!" | "-" ) unary | primary ;
+  // unary → ( "!" | "-" ) unary | call ;
   private Expr unary() {
     if (match(BANG, MINUS)) {
       Token operator = previous();
       Expr right = unary();
       return new Expr.Unary(operator, right);
     }
-    return primary();
+    return call();
+  }
+
+  // call → primary ( "(" arguments? ")" )* ;
+  private Expr call() {
+    Expr expr = primary();
+    while (match(LEFT_PAREN)) {
+      expr = finishCall(expr);
+    }
+    return expr;
+  }
+
+  // arguments → ternary ( "," ternary )* ; a comma separates arguments here
+  private Expr finishCall(Expr callee) {
+    List<Expr> arguments = new ArrayList<>();
+    if (!check(RIGHT_PAREN)) {
+      do {
+        if (arguments.size() >= 255)
+          error(peek(), "Can't have more than 255 arguments.");
+        arguments.add(ternary());
+      } while (match(COMMA));
+    }
+    consume(RIGHT_PAREN, "Expect ')' after arguments.");
+    return new Expr.Call(callee, previous(), arguments);
   }
 
   // primary → NUMBER | STRING | "true" | "false" | "nil" | "(" expression ")" ;
@@ -202,7 +345,7 @@ public class Parser {
     }
 
     if (match(NUMBER, STRING)) {
-      return new Expr.Literal(previous().literal);
+      return new Expr.Literal(tokens.literal(current - 1));
     }
 
     if (match(IDENTIFIER)) {
@@ -220,22 +363,30 @@ public class Parser {
     // Equality
     if (match(BANG_EQUAL, EQUAL_EQUAL)) {
       Expr discarded = comparison();
-      throw error(isAtEnd() ? previous() : advance(), "Missing operand for equality '!='/'==' expression");
+      if (!isAtEnd())
+        advance();
+      throw error(previous(), "Missing operand for equality '!='/'==' expression");
     }
     // Comparison
     if (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
       Expr discarded = term();
-      throw error(isAtEnd() ? previous() : advance(), "Missing operand for comparison '>'/'>='/'<'/'<=' expression");
+      if (!isAtEnd())
+        advance();
+      throw error(previous(), "Missing operand for comparison '>'/'>='/'<'/'<=' expression");
     }
     // Term
     if (match(PLUS, MINUS)) {
       Expr discarded = factor();
-      throw error(isAtEnd() ? previous() : advance(), "Missing operand for term '+'/'-' expression");
+      if (!isAtEnd())
+        advance();
+      throw error(previous(), "Missing operand for term '+'/'-' expression");
     }
     // Factor
     if (match(STAR, SLASH)) {
       Expr discarded = unary();
-      throw error(isAtEnd() ? previous() : advance(), "Missing operand for factor '*'/'/' expression");
+      if (!isAtEnd())
+        advance();
+      throw error(previous(), "Missing operand for factor '*'/'/' expression");
     }
 
     throw error(peek(), "Expected expression");
@@ -254,9 +405,11 @@ public class Parser {
     return false;
   }
 
-  private Token consume(TokenType type, String message) {
-    if (check(type))
-      return advance();
+  private void consume(TokenType type, String message) {
+    if (check(type)) {
+      advance();
+      return;
+    }
     throw error(peek(), message);
   }
 
@@ -264,31 +417,44 @@ public class Parser {
   private boolean check(TokenType type) {
     if (isAtEnd())
       return false;
-    return peek().type == type;
+    return peekType() == type;
   }
 
-  // Consumes next token and returns it
-  private Token advance() {
+  // Consumes next token
+  private void advance() {
     if (!isAtEnd())
       current++;
-    return previous();
   }
 
   // Helpers
   private boolean isAtEnd() {
-    return peek().type == EOF;
+    return peekType() == EOF;
+  }
+
+  // Token types are read straight from the buffer, a Token is only built for
+  // the nodes and errors that keep one
+  private TokenType peekType() {
+    if (scanner != null && current == tokens.size()) {
+      scanner.scanNext();
+    }
+    return tokens.type(current);
   }
 
   private Token peek() {
-    return tokens.get(current);
+    peekType();
+    return tokens.token(current);
   }
 
   private Token previous() {
-    return tokens.get(current - 1);
+    return tokens.token(current - 1);
   }
 
   private ParseError error(Token token, String message) {
-    Lox.error(token, message);
+    if (token.type == EOF) {
+      reporter.syntaxError(token.line, " at end ", message);
+    } else {
+      reporter.syntaxError(token.line, " at '" + token.lexeme + "'", message);
+    }
     return new ParseError();
   }
 
@@ -296,10 +462,10 @@ public class Parser {
     advance();
 
     while (!isAtEnd()) {
-      if (previous().type == SEMICOLON)
+      if (tokens.type(current - 1) == SEMICOLON)
         return;
 
-      switch (peek().type) {
+      switch (peekType()) {
         case CLASS:
         case FUN:
         case VAR:
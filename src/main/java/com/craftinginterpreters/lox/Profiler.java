@@ -0,0 +1,211 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Profiler
+ * Counts how many times every statement runs and samples which statements
+ * are running to estimate their time. The ProfilingInterpreter pushes a
+ * statement on a stack when it starts on it and pops it when done, which is
+ * all the running script pays for besides the counter, and a daemon thread
+ * looks at that stack every millisecond: the statement on top of it gets the
+ * time since the previous sample as self time, every statement on it as
+ * total time.
+ *
+ * A statement's expressions, and the calls in them up to the statements of
+ * the function they run, count as part of the statement.
+ */
+final class Profiler {
+  private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+  // Statements being run, outermost first. Written by the script's thread
+  // only, the sampler reads it without locking and may see it mid-change,
+  // which only makes a sample slightly wrong.
+  private volatile Stmt[] stack = new Stmt[64];
+  private final AtomicInteger depth = new AtomicInteger();
+
+  // Executions of every statement, written by the script's thread. Safe to
+  // read from the thread that stops the profiler while a script that did
+  // not exit itself still runs.
+  private final ConcurrentHashMap<Stmt, long[]> counts = new ConcurrentHashMap<>();
+
+  // Owned by the sampler thread until it is stopped
+  private final IdentityHashMap<Stmt, long[]> times = new IdentityHashMap<>();
+  private final Map<Integer, long[]> lines = new HashMap<>();
+  private final Map<String, long[]> stacks = new HashMap<>();
+  private long sampled = 0;
+  private int samples = 0;
+
+  private final Thread sampler;
+  private volatile boolean running = true;
+
+  Profiler() {
+    sampler = new Thread(this::sample, "lox-profiler");
+    sampler.setDaemon(true);
+  }
+
+  void start() {
+    sampler.start();
+  }
+
+  void enter(Stmt stmt) {
+    // Statements don't override equals, so this is by identity
+    long[] count = counts.get(stmt);
+    if (count == null) {
+      count = counts.computeIfAbsent(stmt, s -> new long[1]);
+    }
+    count[0]++;
+
+    int top = depth.get();
+    Stmt[] frames = stack;
+    if (top == frames.length) {
+      frames = Arrays.copyOf(frames, top * 2);
+      stack = frames;
+    }
+    frames[top] = stmt;
+    depth.lazySet(top + 1);
+  }
+
+  void exit() {
+    depth.lazySet(depth.get() - 1);
+  }
+
+  private void sample() {
+    long last = System.nanoTime();
+    while (running) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(INTERVAL);
+      } catch (InterruptedException e) {
+        return;
+      }
+      long now = System.nanoTime();
+      record(now - last);
+      last = now;
+    }
+  }
+
+  private void record(long elapsed) {
+    int top = depth.get();
+    Stmt[] frames = stack;
+    if (top == 0 || top > frames.length)
+      return;
+
+    StringBuilder collapsed = new StringBuilder();
+    Set<Stmt> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<Integer> seenLines = new HashSet<>();
+    for (int i = 0; i < top; i++) {
+      Stmt stmt = frames[i];
+      if (stmt == null)
+        return;
+      if (i > 0)
+        collapsed.append(';');
+      collapsed.append(label(stmt));
+
+      long[] time = times.computeIfAbsent(stmt, n -> new long[2]);
+      if (seen.add(stmt))
+        time[1] += elapsed;
+      if (i == top - 1)
+        time[0] += elapsed;
+      long[] lineTime = lines.computeIfAbsent(stmt.line, l -> new long[2]);
+      if (seenLines.add(stmt.line))
+        lineTime[1] += elapsed;
+      if (i == top - 1)
+        lineTime[0] += elapsed;
+    }
+    stacks.computeIfAbsent(collapsed.toString(), s -> new long[1])[0] += elapsed;
+    sampled += elapsed;
+    samples++;
+  }
+
+  /**
+   * Stops sampling, must be called before the results are read
+   */
+  void stop() {
+    running = false;
+    try {
+      sampler.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String label(Stmt stmt) {
+    String name;
+    if (stmt instanceof Stmt.Print) {
+      name = "print";
+    } else if (stmt instanceof Stmt.Var) {
+      name = "var " + ((Stmt.Var) stmt).name.lexeme;
+    } else if (stmt instanceof Stmt.Function) {
+      name = "fun " + ((Stmt.Function) stmt).name.lexeme;
+    } else if (stmt instanceof Stmt.Return) {
+      name = "return";
+    } else {
+      name = "expression";
+    }
+    return name + " (line " + stmt.line + ")";
+  }
+
+  /**
+   * Writes the sampled stacks in the collapsed format flame graph tools read
+   * (frames separated by ';', then the time in microseconds)
+   */
+  void writeCollapsed(Path path) throws IOException {
+    try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, long[]> entry : stacks.entrySet()) {
+        long micros = entry.getValue()[0] / 1000;
+        if (micros > 0)
+          out.write(entry.getKey() + " " + micros + "\n");
+      }
+    }
+  }
+
+  /**
+   * Prints the lines with the most self time, with how many times their
+   * statements ran and their hottest statement
+   */
+  void report(PrintStream out, int top) {
+    // Statement executions and hottest statement of every line
+    Map<Integer, long[]> executions = new HashMap<>();
+    Map<Integer, Stmt> hottest = new HashMap<>();
+    for (Map.Entry<Stmt, long[]> entry : counts.entrySet()) {
+      executions.computeIfAbsent(entry.getKey().line, l -> new long[1])[0] += entry.getValue()[0];
+    }
+    for (Map.Entry<Stmt, long[]> entry : times.entrySet()) {
+      Stmt stmt = entry.getKey();
+      Stmt current = hottest.get(stmt.line);
+      if (current == null || times.get(current)[0] < entry.getValue()[0])
+        hottest.put(stmt.line, stmt);
+    }
+
+    List<Map.Entry<Integer, long[]>> sorted = new ArrayList<>(lines.entrySet());
+    sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+    out.printf("[profile] %d samples over %.1f ms%n", samples, sampled / 1e6);
+    out.printf("%8s %10s %10s %12s  %s%n", "line", "self ms", "total ms", "executions", "hottest statement");
+    for (int i = 0; i < Math.min(top, sorted.size()); i++) {
+      int line = sorted.get(i).getKey();
+      long[] time = sorted.get(i).getValue();
+      long[] count = executions.get(line);
+      Stmt stmt = hottest.get(line);
+      out.printf("%8d %10.1f %10.1f %12d  %s%n", line, time[0] / 1e6, time[1] / 1e6, count == null ? 0 : count[0],
+          stmt == null ? "" : label(stmt) + " x" + counts.get(stmt)[0]);
+    }
+  }
+}
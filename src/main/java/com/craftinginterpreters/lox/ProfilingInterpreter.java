@@ -0,0 +1,26 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * ProfilingInterpreter
+ * Interpreter that tells a Profiler about every statement it runs, its
+ * expressions run as they do on the Interpreter
+ */
+final class ProfilingInterpreter extends Interpreter {
+  private final Profiler profiler;
+
+  ProfilingInterpreter(Profiler profiler, OutputSink out) {
+    // Times are for the tree walk, compiled expressions would move them
+    super(new Environment(), out, Lox.reporter, false);
+    this.profiler = profiler;
+  }
+
+  @Override
+  void execute(Stmt stmt) {
+    profiler.enter(stmt);
+    try {
+      super.execute(stmt);
+    } finally {
+      profiler.exit();
+    }
+  }
+}
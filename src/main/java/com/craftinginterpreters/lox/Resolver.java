@@ -0,0 +1,176 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolver
+ * Static pass that runs between the Parser and the Interpreter. Binds every
+ * variable declaration and reference to a (depth, slot) pair so the
+ * Interpreter can index the Environment arrays directly.
+ */
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+  private final Environment globals;
+  // Innermost scope last, each maps a name to its slot in that scope
+  private final List<Map<String, Integer>> scopes = new ArrayList<>();
+
+  Resolver(Environment globals) {
+    this.globals = globals;
+  }
+
+  void resolve(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      resolve(statement);
+    }
+  }
+
+  private void resolve(Stmt stmt) {
+    stmt.accept(this);
+  }
+
+  private void resolve(Expr expr) {
+    expr.accept(this);
+  }
+
+  /**
+   * Looks the name up from the innermost scope outwards, falling back to the
+   * globals. Names that are not declared anywhere yet stay unresolved and are
+   * looked up by name at runtime.
+   */
+  private void resolveVariable(Expr.Variable expr) {
+    String name = expr.name.lexeme;
+    for (int i = scopes.size() - 1; i >= 0; i--) {
+      Integer slot = scopes.get(i).get(name);
+      if (slot != null) {
+        expr.depth = scopes.size() - 1 - i;
+        expr.slot = slot;
+        return;
+      }
+    }
+
+    int slot = globals.slotOf(name);
+    if (slot != -1) {
+      expr.depth = scopes.size();
+      expr.slot = slot;
+    }
+  }
+
+  private int declare(Token name) {
+    if (scopes.isEmpty()) {
+      return globals.declare(name.lexeme);
+    }
+
+    Map<String, Integer> scope = scopes.get(scopes.size() - 1);
+    Integer slot = scope.get(name.lexeme);
+    if (slot == null) {
+      slot = scope.size();
+      scope.put(name.lexeme, slot);
+    }
+    return slot;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    resolve(stmt.expr);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    resolve(stmt.expr);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    // Initializer first, `var a = a;` refers to the previous a
+    if (stmt.initializer != null) {
+      resolve(stmt.initializer);
+    }
+    stmt.slot = declare(stmt.name);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    // Declared before the body so it can call itself
+    stmt.slot = declare(stmt.name);
+
+    // Parameters take the first slots of the frame, in order
+    Map<String, Integer> scope = new HashMap<>();
+    scopes.add(scope);
+    for (Token param : stmt.params) {
+      declare(param);
+    }
+    resolve(stmt.body);
+    scopes.remove(scopes.size() - 1);
+    stmt.frameSize = scope.size();
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    if (stmt.value != null) {
+      resolve(stmt.value);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    resolve(expr.left);
+    resolve(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpr(Expr.Grouping expr) {
+    resolve(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    resolve(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitCommaExpr(Expr.Comma expr) {
+    for (Expr e : expr.exprs) {
+      resolve(e);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitTernaryExpr(Expr.Ternary expr) {
+    resolve(expr.condition);
+    resolve(expr.then);
+    resolve(expr.elseThen);
+    return null;
+  }
+
+  @Override
+  public Void visitCallExpr(Expr.Call expr) {
+    resolve(expr.callee);
+    for (Expr argument : expr.arguments) {
+      resolve(argument);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    resolveVariable(expr);
+    return null;
+  }
+}
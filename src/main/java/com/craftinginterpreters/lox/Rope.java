@@ -0,0 +1,120 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+
+/**
+ * Rope
+ * A Lox string made by concatenation, kept as the two strings it was made
+ * of until its characters are needed, so building a long string piece by
+ * piece copies it once instead of once per piece. Lox string values are
+ * CharSequences, either a String or a Rope; the length (what strings compare
+ * by) is known without flattening, printing and equality flatten.
+ *
+ * Short results are plain Strings, copying a few characters is cheaper than
+ * a node, and so is a short piece appended to a rope that ends in one.
+ *
+ * Once flattened a rope drops its two strings and keeps only the flat copy,
+ * so its characters are held once. Like every value, a rope is only used by
+ * the thread running the context that made it.
+ */
+final class Rope implements CharSequence {
+  // Longest string still concatenated by copying
+  static final int SHORT = 64;
+
+  // The two strings it was made of, null once it is flattened
+  private CharSequence left;
+  private CharSequence right;
+  private final int length;
+  // Cached flat content, made at most once
+  private String flat;
+
+  private Rope(CharSequence left, CharSequence right, int length) {
+    this.left = left;
+    this.right = right;
+    this.length = length;
+  }
+
+  /**
+   * Concatenates Lox values, each a number or a string, numbers are
+   * stringified
+   *
+   * @param operator The + reported when the result is too long for a string
+   */
+  static CharSequence concat(Token operator, Object left, Object right) {
+    return concat(operator, text(left), text(right));
+  }
+
+  private static CharSequence text(Object value) {
+    return value instanceof CharSequence ? (CharSequence) value : Interpreter.stringify(value);
+  }
+
+  static CharSequence concat(Token operator, CharSequence left, CharSequence right) {
+    if (left.length() == 0)
+      return right;
+    if (right.length() == 0)
+      return left;
+
+    int length = left.length() + right.length();
+    if (length < 0)
+      throw new RuntimeError(operator, "String length out of range.");
+    if (length <= SHORT)
+      return left.toString().concat(right.toString());
+
+    if (left instanceof Rope && right.length() <= SHORT) {
+      // Merges a short piece with the short end of the rope
+      Rope rope = (Rope) left;
+      if (rope.flat == null && rope.right.length() + right.length() <= SHORT)
+        return new Rope(rope.left, rope.right.toString().concat(right.toString()), length);
+    }
+    return new Rope(left, right, length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+
+  /**
+   * The characters as one String, copied from the leaves right to left
+   * without recursion, since a rope built in a loop is as deep as the
+   * number of pieces appended
+   */
+  @Override
+  public String toString() {
+    String result = flat;
+    if (result != null)
+      return result;
+
+    char[] chars = new char[length];
+    int end = length;
+    ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+    pending.push(this);
+    while (!pending.isEmpty()) {
+      CharSequence piece = pending.pop();
+      String string = piece instanceof Rope ? ((Rope) piece).flat : (String) piece;
+      if (string == null) {
+        Rope rope = (Rope) piece;
+        pending.push(rope.left);
+        pending.push(rope.right);
+        continue;
+      }
+      end -= string.length();
+      string.getChars(0, string.length(), chars, end);
+    }
+    result = new String(chars);
+    flat = result;
+    left = null;
+    right = null;
+    return result;
+  }
+}
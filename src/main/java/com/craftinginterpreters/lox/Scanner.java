@@ -1,9 +1,9 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 
 /**
  * Scanner
@@ -14,40 +14,81 @@ import static com.craftinginterpreters.lox.TokenType.*;
 
 public class Scanner {
 
-  private final String source;
-  private final List<Token> tokens = new ArrayList<>();
+  // Characters of the source from position `offset` up to position `limit`.
+  // A String source is in there whole, a Reader is read in as the scanner
+  // goes, dropping what is before the token being scanned.
+  private char[] buffer;
+  private int offset = 0;
+  private int limit;
+  private final Reader reader;
+
+  private final TokenBuffer tokens;
 
   private int start = 0;
   private int current = 0;
   private int line = 1;
 
-  private static final Map<String, TokenType> keywords;
+  // Every identifier of this source, interned
+  private final SymbolTable symbols;
+  private final ErrorReporter reporter;
+
+  Scanner(String source) {
+    this(source, new SymbolTable());
+  }
 
   /**
-   * Hashmap for the reserved words
+   * @param symbols Table shared with other scans, so a name is the same
+   *                String instance in all of them
    */
-  static {
-    keywords = new HashMap<>();
-    keywords.put("and", AND);
-    keywords.put("class", CLASS);
-    keywords.put("else", ELSE);
-    keywords.put("false", FALSE);
-    keywords.put("for", FOR);
-    keywords.put("fun", FUN);
-    keywords.put("if", IF);
-    keywords.put("nil", NIL);
-    keywords.put("or", OR);
-    keywords.put("print", PRINT);
-    keywords.put("return", RETURN);
-    keywords.put("super", SUPER);
-    keywords.put("this", THIS);
-    keywords.put("true", TRUE);
-    keywords.put("var", VAR);
-    keywords.put("while", WHILE);
+  Scanner(String source, SymbolTable symbols) {
+    this(source, symbols, Lox.reporter);
   }
 
-  Scanner(String source) {
-    this.source = source;
+  Scanner(String source, SymbolTable symbols, ErrorReporter reporter) {
+    this.buffer = source.toCharArray();
+    this.limit = buffer.length;
+    this.reader = null;
+    this.tokens = new TokenBuffer(buffer);
+    this.symbols = symbols;
+    this.reporter = reporter;
+  }
+
+  /**
+   * Scanner that starts partway through a source, at a position where no
+   * token, string or comment is open (e.g. the start of a token)
+   *
+   * @param from Position to start at
+   * @param line Line that position is on
+   */
+  Scanner(char[] source, int from, int line, SymbolTable symbols) {
+    this(source, from, line, symbols, Lox.reporter);
+  }
+
+  Scanner(char[] source, int from, int line, SymbolTable symbols, ErrorReporter reporter) {
+    this.buffer = source;
+    this.limit = source.length;
+    this.reader = null;
+    this.tokens = new TokenBuffer(buffer);
+    this.symbols = symbols;
+    this.reporter = reporter;
+    this.start = from;
+    this.current = from;
+    this.line = line;
+  }
+
+  /**
+   * Scanner that pulls its characters from a reader as tokens are requested,
+   * so only the token being scanned has to be in memory
+   *
+   * @param reader Source, it isn't closed by the scanner
+   */
+  Scanner(Reader reader) {
+    this.buffer = new char[8192];
+    this.limit = 0;
+    this.reader = reader;
+    this.tokens = new TokenBuffer(buffer);
+    this.symbols = new SymbolTable();
+    this.reporter = Lox.reporter;
   }
 
   /**
@@ -55,14 +96,35 @@ public class Scanner {
    * 
    * @return
    */
-  List<Token> scanTokens() {
-    while (!isAtEnd()) {
+  TokenBuffer scanTokens() {
+    while (scanNext())
+      ;
+    return tokens;
+  }
+
+  /**
+   * Buffer the tokens are scanned into
+   */
+  TokenBuffer tokens() {
+    return tokens;
+  }
+
+  /**
+   * Scans the next token only and appends it to the buffer
+   *
+   * @return false once the EOF token has been appended
+   */
+  boolean scanNext() {
+    int count = tokens.size();
+    while (tokens.size() == count) {
+      if (isAtEnd()) {
+        tokens.add(EOF, current, 0, line, null);
+        return false;
+      }
       start = current;
       scanToken();
     }
-
-    tokens.add(new Token(EOF, "", null, line));
-    return tokens;
+    return true;
   }
 
   /**
@@ -121,8 +183,11 @@ public class Scanner {
         break;
       case '/':
         if (match('/')) {
-          while (peek() != '\n' && !isAtEnd())
+          while (peek() != '\n' && !isAtEnd()) {
             advance();
+            // Comments are never a lexeme, nothing to keep in the buffer
+            start = current;
+          }
         } else if (match('*')) {
           scanBlockComment();
         } else {
@@ -145,7 +210,7 @@ public class Scanner {
         } else if (isAlpha(c)) {
           identifier();
         } else {
-          Lox.error(line, "Unexpected character.");
+          reporter.syntaxError(line, "", "Unexpected character.");
         }
         break;
     }
@@ -179,12 +244,86 @@ public class Scanner {
     while (isAlphaNumeric(peek()))
       advance();
 
-    String text = source.substring(start, current);
-    TokenType type = keywords.get(text);
-    if (type == null)
-      type = IDENTIFIER;
-    addToken(type);
+    TokenType type = keyword();
+    if (type == IDENTIFIER) {
+      // The interned name goes in the literal slot, see TokenBuffer.lexeme
+      addToken(IDENTIFIER, symbols.intern(buffer, start - offset, current - start));
+    } else {
+      addToken(type);
+    }
+  }
+
+  /**
+   * Recognises the reserved words from the characters of the lexeme, by its
+   * first (and second) character and then the rest of it, without creating a
+   * String
+   *
+   * @return Keyword type, or IDENTIFIER
+   */
+  private TokenType keyword() {
+    int length = current - start;
+    switch (buffer[start - offset]) {
+      case 'a':
+        return checkKeyword(1, "nd", AND);
+      case 'c':
+        return checkKeyword(1, "lass", CLASS);
+      case 'e':
+        return checkKeyword(1, "lse", ELSE);
+      case 'f':
+        if (length > 1) {
+          switch (buffer[start + 1 - offset]) {
+            case 'a':
+              return checkKeyword(2, "lse", FALSE);
+            case 'o':
+              return checkKeyword(2, "r", FOR);
+            case 'u':
+              return checkKeyword(2, "n", FUN);
+          }
+        }
+        break;
+      case 'i':
+        return checkKeyword(1, "f", IF);
+      case 'n':
+        return checkKeyword(1, "il", NIL);
+      case 'o':
+        return checkKeyword(1, "r", OR);
+      case 'p':
+        return checkKeyword(1, "rint", PRINT);
+      case 'r':
+        return checkKeyword(1, "eturn", RETURN);
+      case 's':
+        return checkKeyword(1, "uper", SUPER);
+      case 't':
+        if (length > 1) {
+          switch (buffer[start + 1 - offset]) {
+            case 'h':
+              return checkKeyword(2, "is", THIS);
+            case 'r':
+              return checkKeyword(2, "ue", TRUE);
+          }
+        }
+        break;
+      case 'v':
+        return checkKeyword(1, "ar", VAR);
+      case 'w':
+        return checkKeyword(1, "hile", WHILE);
+    }
+    return IDENTIFIER;
+  }
 
+  /**
+   * @param from Characters of the lexeme already matched
+   * @param rest What the rest of the lexeme must be
+   * @param type Keyword it would be
+   */
+  private TokenType checkKeyword(int from, String rest, TokenType type) {
+    if (current - start != from + rest.length())
+      return IDENTIFIER;
+    for (int i = 0; i < rest.length(); i++) {
+      if (buffer[start + from + i - offset] != rest.charAt(i))
+        return IDENTIFIER;
+    }
+    return type;
   }
 
   /**
@@ -199,8 +338,16 @@ public class Scanner {
 
       while (isDigit(peek()))
         advance();
+    } else if (current - start <= 15) {
+      // Integers this short are exact as a double, no need for a String
+      long value = 0;
+      for (int i = start; i < current; i++) {
+        value = value * 10 + (buffer[i - offset] - '0');
+      }
+      addToken(NUMBER, (double) value);
+      return;
     }
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    addToken(NUMBER, Double.parseDouble(text(start, current)));
   }
 
   /**
@@ -209,9 +356,9 @@ public class Scanner {
    * @return
    */
   private char peekNext() {
-    if (current + 1 >= source.length())
+    if (!available(current + 1))
       return '\0';
-    return source.charAt(current + 1);
+    return buffer[current + 1 - offset];
   }
 
   private boolean isDigit(char c) {
@@ -228,13 +375,13 @@ public class Scanner {
       advance();
     }
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string.");
+      reporter.syntaxError(line, "", "Unterminated string.");
       return;
     }
 
     advance();
 
-    String value = source.substring(start + 1, current - 1);
+    String value = text(start + 1, current - 1);
     addToken(STRING, value);
   }
 
@@ -247,6 +394,7 @@ public class Scanner {
 
     while (!isAtEnd()) {
       char c = advance();
+      start = current;
 
       if (c == '\n') {
         line++;
@@ -259,7 +407,7 @@ public class Scanner {
       }
     }
 
-    Lox.error(line, "Unterminated block comment.");
+    reporter.syntaxError(line, "", "Unterminated block comment.");
   }
 
   /**
@@ -270,7 +418,7 @@ public class Scanner {
   private char peek() {
     if (isAtEnd())
       return '\0';
-    return source.charAt(current);
+    return buffer[current - offset];
   }
 
   /**
@@ -283,7 +431,7 @@ public class Scanner {
     if (isAtEnd()) {
       return false;
     }
-    if (source.charAt(current) != expected) {
+    if (buffer[current - offset] != expected) {
       return false;
     }
     current++;
@@ -296,12 +444,11 @@ public class Scanner {
    * @return character at next position
    */
   private char advance() {
-    return source.charAt(current++);
+    return buffer[current++ - offset];
   }
 
   /**
-   * Add token to the list of tokens of the current scanned source without a
-   * literal value
+   * Adds a token for the current scanned lexeme without a literal value
    * 
    * @param type Token type
    */
@@ -310,24 +457,77 @@ public class Scanner {
   }
 
   /**
-   * Add token to the list of tokens of the current scanned source
+   * Adds a token for the current scanned lexeme
    * 
    * @param type    Token type
    * @param literal Explicit value
    */
   private void addToken(TokenType type, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(type, text, literal, line));
+    tokens.add(type, start, current - start, line, literal);
+  }
+
+  /**
+   * Characters between two positions of the source
+   */
+  private String text(int from, int to) {
+    return new String(buffer, from - offset, to - from);
+  }
+
+  /**
+   * Makes sure the character at a position is in the buffer, reading more
+   * from the reader if there is one
+   *
+   * @return false if the source ends before that position
+   */
+  private boolean available(int position) {
+    if (position < limit)
+      return true;
+
+    while (reader != null && position >= limit) {
+      if (!fill())
+        return false;
+    }
+    return position < limit;
+  }
+
+  /**
+   * Reads the next block of characters, first dropping everything before the
+   * current token and the tokens still in the buffer, and growing the buffer
+   * if what is left fills it
+   *
+   * @return false at the end of the reader
+   */
+  private boolean fill() {
+    int from = tokens.size() > 0 ? Math.min(start, tokens.start(0)) : start;
+    int keep = from - offset;
+    if (keep > 0) {
+      System.arraycopy(buffer, keep, buffer, 0, limit - from);
+      offset = from;
+    }
+    if (limit - offset == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    tokens.source(buffer, offset);
+
+    try {
+      int read = reader.read(buffer, limit - offset, buffer.length - (limit - offset));
+      if (read == -1)
+        return false;
+      limit += read;
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   /**
    * Helper to check if the scanner is at the end of the source
    * 
-   * @return true/false if the current scanned character is greater or equal than
-   *         the length of the source
+   * @return true/false if there are no characters left after the current
+   *         position
    */
   private boolean isAtEnd() {
-    return current >= source.length();
+    return !available(current);
   }
 
 }
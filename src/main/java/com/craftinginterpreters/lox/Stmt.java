@@ -3,11 +3,25 @@ package com.craftinginterpreters.lox;
 import java.util.List;
 
 abstract class Stmt {
-  interface Visitor<R> {
+  // Line the statement starts on, set by the Parser
+  int line;
+
+  /**
+   * Visitor
+   */
+  public interface Visitor<R> {
+
     R visitExpressionStmt(Expression stmt);
+
     R visitPrintStmt(Print stmt);
+
     R visitVarStmt(Var stmt);
+
+    R visitFunctionStmt(Function stmt);
+
+    R visitReturnStmt(Return stmt);
   }
+
   static class Expression extends Stmt {
     Expression(Expr expr) {
       this.expr = expr;
@@ -20,6 +34,7 @@ abstract class Stmt {
 
     final Expr expr;
   }
+
   static class Print extends Stmt {
     Print(Expr expr) {
       this.expr = expr;
@@ -32,6 +47,7 @@ abstract class Stmt {
 
     final Expr expr;
   }
+
   static class Var extends Stmt {
     Var(Token name, Expr initializer) {
       this.name = name;
@@ -45,7 +61,45 @@ abstract class Stmt {
 
     final Token name;
     final Expr initializer;
+    // Filled in by the Resolver
+    int slot = -1;
+  }
+
+  static class Function extends Stmt {
+    Function(Token name, List<Token> params, List<Stmt> body) {
+      this.name = name;
+      this.params = params;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitFunctionStmt(this);
+    }
+
+    final Token name;
+    final List<Token> params;
+    final List<Stmt> body;
+    // Filled in by the Resolver: the function's global slot and how many
+    // slots its parameters and locals take in a call frame
+    int slot = -1;
+    int frameSize = 0;
+  }
+
+  static class Return extends Stmt {
+    Return(Token keyword, Expr value) {
+      this.keyword = keyword;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitReturnStmt(this);
+    }
+
+    final Token keyword;
+    final Expr value;
   }
 
- abstract <R> R accept(Visitor<R> visitor);
+  abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,87 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * StmtNode
+ * Executable statement, root of the expression nodes below it
+ */
+abstract class StmtNode extends Node {
+  ExprNode expr;
+
+  StmtNode(ExprNode expr) {
+    this.expr = expr == null ? null : adopt(expr);
+  }
+
+  abstract void execute(Environment environment);
+
+  @Override
+  void replaceChild(Node child, Node replacement) {
+    if (expr != child)
+      throw notAChild(child);
+    expr = (ExprNode) replacement;
+  }
+
+  static final class Expression extends StmtNode {
+    Expression(ExprNode expr) {
+      super(expr);
+    }
+
+    @Override
+    void execute(Environment environment) {
+      expr.execute(environment);
+    }
+  }
+
+  static final class Print extends StmtNode {
+    private final OutputSink out;
+
+    Print(ExprNode expr, OutputSink out) {
+      super(expr);
+      this.out = out;
+    }
+
+    @Override
+    void execute(Environment environment) {
+      out.println(Interpreter.stringify(expr.execute(environment)));
+    }
+  }
+
+  /**
+   * Root of the value of a function body, which specialising nodes below it
+   * need as their parent
+   */
+  static final class Return extends StmtNode {
+    Return(ExprNode value) {
+      super(value);
+    }
+
+    Object value(Environment environment) {
+      return expr.execute(environment);
+    }
+
+    @Override
+    void execute(Environment environment) {
+      value(environment);
+    }
+  }
+
+  static final class Var extends StmtNode {
+    private final String name;
+    private final int slot;
+
+    Var(String name, int slot, ExprNode initializer) {
+      super(initializer);
+      this.name = name;
+      this.slot = slot;
+    }
+
+    @Override
+    void execute(Environment environment) {
+      Object value = expr == null ? null : expr.execute(environment);
+      if (slot != -1) {
+        environment.define(slot, value);
+      } else {
+        environment.define(name, value);
+      }
+    }
+  }
+}
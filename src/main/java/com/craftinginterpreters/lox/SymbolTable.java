@@ -0,0 +1,117 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * SymbolTable
+ * Interns identifier names straight from the source characters. Looking up a
+ * name that was already seen allocates nothing, and every distinct name is a
+ * single String instance. Scanners that share a table (e.g. the REPL lines,
+ * or the chunks of a ParallelFrontEnd) share the instances too.
+ *
+ * Thread-safe: lookups read the slots without locking, only adding a name
+ * takes the table's lock. A lookup racing with an add may miss the name and
+ * look again under the lock, it never returns a second instance.
+ */
+final class SymbolTable {
+  private static final class Slots {
+    final String[] names;
+    final int[] hashes;
+
+    Slots(int capacity) {
+      names = new String[capacity];
+      hashes = new int[capacity];
+    }
+  }
+
+  // Replaced whole when it grows, so a lookup probes one consistent array
+  private volatile Slots slots = new Slots(64);
+  // Guarded by this
+  private int count = 0;
+
+  /**
+   * @return The shared instance of a name
+   */
+  String intern(String name) {
+    return intern(name.toCharArray(), 0, name.length());
+  }
+
+  /**
+   * @return The shared instance of the name in chars[from, from + length)
+   */
+  String intern(char[] chars, int from, int length) {
+    // Same hash as String.hashCode()
+    int hash = 0;
+    for (int i = from; i < from + length; i++) {
+      hash = 31 * hash + chars[i];
+    }
+
+    String name = find(slots, hash, chars, from, length);
+    return name != null ? name : add(hash, chars, from, length);
+  }
+
+  private static String find(Slots slots, int hash, char[] chars, int from, int length) {
+    String[] names = slots.names;
+    int mask = names.length - 1;
+    int index = slot(hash, names.length);
+    String name;
+    while ((name = names[index]) != null) {
+      if (slots.hashes[index] == hash && matches(name, chars, from, length))
+        return name;
+      index = (index + 1) & mask;
+    }
+    return null;
+  }
+
+  private synchronized String add(int hash, char[] chars, int from, int length) {
+    Slots current = slots;
+    // Another thread may have added it since the lookup
+    String name = find(current, hash, chars, from, length);
+    if (name != null)
+      return name;
+
+    name = new String(chars, from, length);
+    insert(current, hash, name);
+    if (++count * 2 > current.names.length) {
+      slots = grow(current);
+    }
+    return name;
+  }
+
+  /**
+   * Fibonacci hashing: names like v1, v2, v3 differ only in the low bits of
+   * their hash and would pile up next to each other, the top bits of the
+   * product are spread out
+   */
+  private static int slot(int hash, int capacity) {
+    return (hash * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(capacity - 1);
+  }
+
+  private static boolean matches(String name, char[] chars, int from, int length) {
+    if (name.length() != length)
+      return false;
+    for (int i = 0; i < length; i++) {
+      if (name.charAt(i) != chars[from + i])
+        return false;
+    }
+    return true;
+  }
+
+  private static void insert(Slots slots, int hash, String name) {
+    int mask = slots.names.length - 1;
+    int index = slot(hash, slots.names.length);
+    while (slots.names[index] != null) {
+      index = (index + 1) & mask;
+    }
+    // The hash first, a lookup that sees the name without it only misses
+    slots.hashes[index] = hash;
+    slots.names[index] = name;
+  }
+
+  private static Slots grow(Slots old) {
+    Slots grown = new Slots(old.names.length * 2);
+    for (int i = 0; i < old.names.length; i++) {
+      if (old.names[i] != null)
+        insert(grown, old.hashes[i], old.names[i]);
+    }
+    return grown;
+  }
+}
@@ -0,0 +1,213 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Telemetry
+ * What the front end and the engines tell monitoring tools: a JFR event for
+ * every scan, parse and interpretation, and counters that add up over the
+ * life of the JVM, published as a LoxMBean.
+ *
+ * Without a recording running no event is made, and the counters are
+ * LongAdders so contexts running concurrently don't fight over them. The
+ * MBean is only registered when JMX is wanted (-Dlox.jmx=true, or remote JMX
+ * being enabled), since starting the platform MBean server takes longer than
+ * running most scripts.
+ */
+final class Telemetry {
+  static final String OBJECT_NAME = "com.craftinginterpreters.lox:type=Lox";
+
+  static final LongAdder scripts = new LongAdder();
+  static final LongAdder tokens = new LongAdder();
+  static final LongAdder statements = new LongAdder();
+  static final LongAdder syntaxErrors = new LongAdder();
+  static final LongAdder runtimeErrors = new LongAdder();
+  static final LongAdder printBytes = new LongAdder();
+
+  static {
+    if (Boolean.getBoolean("lox.jmx") || System.getProperty("com.sun.management.jmxremote") != null
+        || System.getProperty("com.sun.management.jmxremote.port") != null) {
+      register();
+    }
+  }
+
+  private Telemetry() {
+  }
+
+  @Name("com.craftinginterpreters.lox.Scan")
+  @Label("Lox Scan")
+  @Category("Lox")
+  static final class ScanEvent extends Event {
+    @Label("Characters")
+    int characters;
+
+    @Label("Tokens")
+    int tokens;
+  }
+
+  @Name("com.craftinginterpreters.lox.Parse")
+  @Label("Lox Parse")
+  @Category("Lox")
+  static final class ParseEvent extends Event {
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Statements")
+    int statements;
+  }
+
+  @Name("com.craftinginterpreters.lox.Interpret")
+  @Label("Lox Interpret")
+  @Category("Lox")
+  static final class InterpretEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Statements Executed")
+    int statements;
+  }
+
+  // Events are only made while JFR runs: the first event class loaded
+  // starts JFR, which takes longer than most scripts
+
+  static ScanEvent beginScan() {
+    if (!FlightRecorder.isInitialized())
+      return null;
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    return event;
+  }
+
+  static void scanned(ScanEvent event, int characters, int count) {
+    tokens.add(count);
+    if (event != null) {
+      event.characters = characters;
+      event.tokens = count;
+      event.commit();
+    }
+  }
+
+  static TokenBuffer scan(Scanner scanner, int characters) {
+    ScanEvent event = beginScan();
+    TokenBuffer buffer = scanner.scanTokens();
+    scanned(event, characters, buffer.size());
+    return buffer;
+  }
+
+  static ParseEvent beginParse() {
+    if (!FlightRecorder.isInitialized())
+      return null;
+    ParseEvent event = new ParseEvent();
+    event.begin();
+    return event;
+  }
+
+  static void parsed(ParseEvent event, int count, int statements) {
+    if (event != null) {
+      event.tokens = count;
+      event.statements = statements;
+      event.commit();
+    }
+  }
+
+  static List<Stmt> parse(Parser parser, int count) {
+    ParseEvent event = beginParse();
+    List<Stmt> parsed = parser.parse();
+    parsed(event, count, parsed.size());
+    return parsed;
+  }
+
+  static InterpretEvent beginInterpret() {
+    if (!FlightRecorder.isInitialized())
+      return null;
+    InterpretEvent event = new InterpretEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param executed Top-level statements that ran to completion
+   */
+  static void interpreted(InterpretEvent event, String engine, int executed) {
+    statements.add(executed);
+    if (event != null) {
+      event.engine = engine;
+      event.statements = executed;
+      event.commit();
+    }
+  }
+
+  /**
+   * Counts a line printed, in the bytes UTF-8 takes for it
+   */
+  static void printed(String text) {
+    long bytes = text.length() + System.lineSeparator().length();
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80)
+        bytes += c >= 0x800 && !Character.isSurrogate(c) ? 2 : 1;
+    }
+    printBytes.add(bytes);
+  }
+
+  /**
+   * Publishes the counters on the platform MBean server, doing nothing if
+   * they already are
+   */
+  static synchronized void register() {
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(new Counters(), LoxMBean.class),
+            name);
+      }
+    } catch (JMException e) {
+      // Monitoring is never worth failing a script for
+      System.err.println("Cannot register " + OBJECT_NAME + ": " + e.getMessage());
+    }
+  }
+
+  private static class Counters implements LoxMBean {
+    @Override
+    public long getScriptsRun() {
+      return scripts.sum();
+    }
+
+    @Override
+    public long getTokensScanned() {
+      return tokens.sum();
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+      return statements.sum();
+    }
+
+    @Override
+    public long getSyntaxErrors() {
+      return syntaxErrors.sum();
+    }
+
+    @Override
+    public long getRuntimeErrors() {
+      return runtimeErrors.sum();
+    }
+
+    @Override
+    public long getPrintBytes() {
+      return printBytes.sum();
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * TokenBuffer
+ * Tokens of a source stored as parallel arrays (type, start offset, length,
+ * line, and a side array for literals) instead of one Token object each.
+ * Lexemes stay in the source characters and are only turned into Strings
+ * when a Token is asked for, e.g. for an operator or an error message.
+ * Identifiers keep their interned name in the literal slot, and punctuation
+ * and keywords always have the same lexeme, so neither allocates one.
+ */
+final class TokenBuffer {
+  private static final TokenType[] TYPES = TokenType.values();
+  private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+  private static final byte IDENTIFIER = (byte) TokenType.IDENTIFIER.ordinal();
+
+  static {
+    String[][] fixed = {
+        { "LEFT_PAREN", "(" }, { "RIGHT_PAREN", ")" }, { "LEFT_BRACE", "{" }, { "RIGHT_BRACE", "}" },
+        { "COMMA", "," }, { "DOT", "." }, { "MINUS", "-" }, { "PLUS", "+" }, { "SEMICOLON", ";" },
+        { "SLASH", "/" }, { "STAR", "*" }, { "Q_MARK", "?" }, { "COLON", ":" },
+        { "BANG", "!" }, { "BANG_EQUAL", "!=" }, { "EQUAL", "=" }, { "EQUAL_EQUAL", "==" },
+        { "GREATER", ">" }, { "GREATER_EQUAL", ">=" }, { "LESS", "<" }, { "LESS_EQUAL", "<=" },
+        { "AND", "and" }, { "CLASS", "class" }, { "ELSE", "else" }, { "FALSE", "false" },
+        { "FUN", "fun" }, { "FOR", "for" }, { "IF", "if" }, { "NIL", "nil" }, { "OR", "or" },
+        { "PRINT", "print" }, { "RETURN", "return" }, { "SUPER", "super" }, { "THIS", "this" },
+        { "TRUE", "true" }, { "VAR", "var" }, { "WHILE", "while" }, { "EOF", "" } };
+    for (String[] lexeme : fixed) {
+      FIXED_LEXEMES[TokenType.valueOf(lexeme[0]).ordinal()] = lexeme[1];
+    }
+  }
+
+  private byte[] types = new byte[256];
+  private int[] starts = new int[256];
+  private int[] lengths = new int[256];
+  private int[] lines = new int[256];
+  private Object[] literals = new Object[256];
+  private int count = 0;
+
+  // Characters the start offsets point into, source[0] is at position
+  // sourceOffset
+  private char[] source;
+  private int sourceOffset;
+
+  TokenBuffer(char[] source) {
+    this.source = source;
+  }
+
+  /**
+   * The scanner moved or refilled its characters
+   */
+  void source(char[] source, int sourceOffset) {
+    this.source = source;
+    this.sourceOffset = sourceOffset;
+  }
+
+  void add(TokenType type, int start, int length, int line, Object literal) {
+    if (count == types.length) {
+      int capacity = count * 2;
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+      literals = Arrays.copyOf(literals, capacity);
+    }
+    types[count] = (byte) type.ordinal();
+    starts[count] = start;
+    lengths[count] = length;
+    lines[count] = line;
+    literals[count] = literal;
+    count++;
+  }
+
+  /**
+   * Forgets the first tokens, the following ones move down to index 0
+   *
+   * @param n How many tokens to drop
+   */
+  void discard(int n) {
+    int rest = count - n;
+    System.arraycopy(types, n, types, 0, rest);
+    System.arraycopy(starts, n, starts, 0, rest);
+    System.arraycopy(lengths, n, lengths, 0, rest);
+    System.arraycopy(lines, n, lines, 0, rest);
+    System.arraycopy(literals, n, literals, 0, rest);
+    Arrays.fill(literals, rest, count, null);
+    count = rest;
+  }
+
+  /**
+   * Replaces tokens [from, to) with the first tokens of another buffer, the
+   * tokens after them are moved by the given number of characters and lines
+   *
+   * @param with      Tokens to put in, positioned in the new source already
+   * @param withCount How many of them to take
+   */
+  void replace(int from, int to, TokenBuffer with, int withCount, int shift, int lineShift) {
+    int tail = count - to;
+    int size = from + withCount + tail;
+    if (size > types.length) {
+      int capacity = Math.max(size, types.length * 2);
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+      literals = Arrays.copyOf(literals, capacity);
+    }
+    splice(types, from, to, with.types, withCount, tail);
+    splice(starts, from, to, with.starts, withCount, tail);
+    splice(lengths, from, to, with.lengths, withCount, tail);
+    splice(lines, from, to, with.lines, withCount, tail);
+    splice(literals, from, to, with.literals, withCount, tail);
+    if (size < count) {
+      Arrays.fill(literals, size, count, null);
+    }
+    for (int i = from + withCount; i < size; i++) {
+      starts[i] += shift;
+      lines[i] += lineShift;
+    }
+    count = size;
+    source(with.source, with.sourceOffset);
+  }
+
+  private static void splice(Object array, int from, int to, Object with, int withCount, int tail) {
+    System.arraycopy(array, to, array, from + withCount, tail);
+    System.arraycopy(with, 0, array, from, withCount);
+  }
+
+  /**
+   * Forgets the tokens from an index on
+   */
+  void truncate(int size) {
+    Arrays.fill(literals, size, count, null);
+    count = size;
+  }
+
+  /**
+   * Adds tokens [from, to) of another buffer over the same source
+   *
+   * @param lineShift Added to their lines
+   */
+  void append(TokenBuffer other, int from, int to, int lineShift) {
+    int size = count + to - from;
+    if (size > types.length) {
+      int capacity = Math.max(size, types.length * 2);
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+      literals = Arrays.copyOf(literals, capacity);
+    }
+    System.arraycopy(other.types, from, types, count, to - from);
+    System.arraycopy(other.starts, from, starts, count, to - from);
+    System.arraycopy(other.lengths, from, lengths, count, to - from);
+    System.arraycopy(other.lines, from, lines, count, to - from);
+    System.arraycopy(other.literals, from, literals, count, to - from);
+    if (lineShift != 0) {
+      for (int i = count; i < size; i++) {
+        lines[i] += lineShift;
+      }
+    }
+    count = size;
+  }
+
+  int size() {
+    return count;
+  }
+
+  TokenType type(int index) {
+    return TYPES[types[index]];
+  }
+
+  int start(int index) {
+    return starts[index];
+  }
+
+  int length(int index) {
+    return lengths[index];
+  }
+
+  int line(int index) {
+    return lines[index];
+  }
+
+  /**
+   * @return Index of the token that starts at a position, negative if none
+   *         does
+   */
+  int search(int position) {
+    return Arrays.binarySearch(starts, 0, count, position);
+  }
+
+  Object literal(int index) {
+    return types[index] == IDENTIFIER ? null : literals[index];
+  }
+
+  String lexeme(int index) {
+    if (types[index] == IDENTIFIER)
+      return (String) literals[index];
+    String fixed = FIXED_LEXEMES[types[index]];
+    if (fixed != null)
+      return fixed;
+    return new String(source, starts[index] - sourceOffset, lengths[index]);
+  }
+
+  /**
+   * Materialises a Token, for the AST nodes and errors that need one
+   */
+  Token token(int index) {
+    return new Token(type(index), lexeme(index), literal(index), lines[index]);
+  }
+}
@@ -0,0 +1,294 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * VM
+ * Stack based virtual machine that runs the Chunks produced by the Compiler.
+ * Same semantics and error messages as the Interpreter.
+ *
+ * A call runs the function's chunk in a new run() on an array that holds the
+ * parameters and locals in its first slots and the operand stack above them.
+ * Like the Interpreter's frames, these arrays are kept per call depth and
+ * reused by the next call at that depth.
+ */
+public class VM {
+
+  final Environment globals = new Environment();
+  private final OutputSink out;
+
+  // Top-level statements that completed, like the other engines count them.
+  // Each one ends with a POP, PRINT or DEFINE_GLOBAL(_NAMED), the ones in
+  // function bodies (POP, PRINT or DEFINE_LOCAL) run with calls above 0.
+  private int executed;
+
+  // Frames of the calls in progress, indexed by call depth
+  private Object[][] frames = new Object[16][];
+  private int calls = 0;
+
+  VM() {
+    this(OutputSink.of(null));
+  }
+
+  VM(OutputSink out) {
+    this.out = out;
+  }
+
+  void interpret(Chunk chunk) {
+    Telemetry.InterpretEvent event = Telemetry.beginInterpret();
+    executed = 0;
+    try {
+      run(chunk, new Object[chunk.maxStack], 0);
+    } catch (RuntimeError e) {
+      Telemetry.runtimeErrors.increment();
+      Lox.runtimeError(e);
+    } finally {
+      Telemetry.interpreted(event, "vm", executed);
+    }
+  }
+
+  /**
+   * Runs a chunk until its RETURN or RETURN_VALUE
+   *
+   * @param stack Locals, then room for the chunk's operand stack
+   * @param sp    Where the operand stack starts
+   * @return The value of a function body
+   */
+  private Object run(Chunk chunk, Object[] stack, int sp) {
+    final byte[] code = chunk.code;
+    final Object[] constants = chunk.constants;
+    int ip = 0;
+
+    for (;;) {
+      byte instruction = code[ip++];
+      switch (instruction) {
+        case OpCode.CONSTANT:
+          stack[sp++] = constants[readU24(code, ip)];
+          ip += 3;
+          break;
+        case OpCode.NIL:
+          stack[sp++] = null;
+          break;
+        case OpCode.TRUE:
+          stack[sp++] = true;
+          break;
+        case OpCode.FALSE:
+          stack[sp++] = false;
+          break;
+        case OpCode.POP:
+          sp--;
+          if (calls == 0)
+            executed++;
+          break;
+        case OpCode.GET_GLOBAL:
+          stack[sp++] = globals.getAt(0, readU24(code, ip), (Token) constants[readU24(code, ip + 3)]);
+          ip += 6;
+          break;
+        case OpCode.GET_GLOBAL_NAMED:
+          stack[sp++] = globals.get((Token) constants[readU24(code, ip)]);
+          ip += 3;
+          break;
+        case OpCode.DEFINE_GLOBAL:
+          globals.define(readU24(code, ip), stack[--sp]);
+          ip += 3;
+          executed++;
+          break;
+        case OpCode.DEFINE_GLOBAL_NAMED:
+          globals.define((String) constants[readU24(code, ip)], stack[--sp]);
+          ip += 3;
+          executed++;
+          break;
+        case OpCode.EQUAL: {
+          Object b = stack[--sp];
+          stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], b);
+          break;
+        }
+        case OpCode.NOT_EQUAL: {
+          Object b = stack[--sp];
+          stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], b);
+          break;
+        }
+        case OpCode.GREATER: {
+          Object b = stack[--sp];
+          Token operator = (Token) constants[readU24(code, ip)];
+          stack[sp - 1] = Interpreter.magnitude(operator, stack[sp - 1]) > Interpreter.magnitude(operator, b);
+          ip += 3;
+          break;
+        }
+        case OpCode.GREATER_EQUAL: {
+          Object b = stack[--sp];
+          Token operator = (Token) constants[readU24(code, ip)];
+          stack[sp - 1] = Interpreter.magnitude(operator, stack[sp - 1]) >= Interpreter.magnitude(operator, b);
+          ip += 3;
+          break;
+        }
+        case OpCode.LESS: {
+          Object b = stack[--sp];
+          Token operator = (Token) constants[readU24(code, ip)];
+          stack[sp - 1] = Interpreter.magnitude(operator, stack[sp - 1]) < Interpreter.magnitude(operator, b);
+          ip += 3;
+          break;
+        }
+        case OpCode.LESS_EQUAL: {
+          Object b = stack[--sp];
+          Token operator = (Token) constants[readU24(code, ip)];
+          stack[sp - 1] = Interpreter.magnitude(operator, stack[sp - 1]) <= Interpreter.magnitude(operator, b);
+          ip += 3;
+          break;
+        }
+        case OpCode.ADD: {
+          Object b = stack[--sp];
+          Object a = stack[sp - 1];
+          if (a instanceof Double && b instanceof Double) {
+            stack[sp - 1] = (double) a + (double) b;
+          } else if ((a instanceof CharSequence || a instanceof Double)
+              && (b instanceof CharSequence || b instanceof Double)) {
+            stack[sp - 1] = Rope.concat((Token) constants[readU24(code, ip)], a, b);
+          } else {
+            throw new RuntimeError((Token) constants[readU24(code, ip)], "The operands must be numbers or strings");
+          }
+          ip += 3;
+          break;
+        }
+        case OpCode.SUBTRACT: {
+          Object b = stack[--sp];
+          Object a = stack[sp - 1];
+          checkNumberOperands(constants, code, ip, a, b);
+          stack[sp - 1] = (double) a - (double) b;
+          ip += 3;
+          break;
+        }
+        case OpCode.MULTIPLY: {
+          Object b = stack[--sp];
+          Object a = stack[sp - 1];
+          checkNumberOperands(constants, code, ip, a, b);
+          stack[sp - 1] = (double) a * (double) b;
+          ip += 3;
+          break;
+        }
+        case OpCode.DIVIDE: {
+          Object b = stack[--sp];
+          Object a = stack[sp - 1];
+          checkNumberOperands(constants, code, ip, a, b);
+          if ((double) b == 0) {
+            throw new RuntimeError((Token) constants[readU24(code, ip)], "You are trying to divide by zero.");
+          }
+          stack[sp - 1] = (double) a / (double) b;
+          ip += 3;
+          break;
+        }
+        case OpCode.NOT:
+          stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+          break;
+        case OpCode.NEGATE: {
+          Object a = stack[sp - 1];
+          if (!(a instanceof Double)) {
+            throw new RuntimeError((Token) constants[readU24(code, ip)], "Operand must be a number.");
+          }
+          stack[sp - 1] = -(double) a;
+          ip += 3;
+          break;
+        }
+        case OpCode.PRINT:
+          out.println(Interpreter.stringify(stack[--sp]));
+          if (calls == 0)
+            executed++;
+          break;
+        case OpCode.JUMP:
+          ip = readU24(code, ip);
+          break;
+        case OpCode.JUMP_IF_FALSE:
+          ip = Interpreter.isTruthy(stack[--sp]) ? ip + 3 : readU24(code, ip);
+          break;
+        case OpCode.DISCARD:
+          sp--;
+          break;
+        case OpCode.GET_LOCAL: {
+          Object value = stack[readU24(code, ip)];
+          if (value == Environment.UNDEFINED) {
+            Token name = (Token) constants[readU24(code, ip + 3)];
+            throw new RuntimeError(name, "Undefined Variable '" + name.lexeme + "'.");
+          }
+          stack[sp++] = value;
+          ip += 6;
+          break;
+        }
+        case OpCode.DEFINE_LOCAL:
+          stack[readU24(code, ip)] = stack[--sp];
+          ip += 3;
+          if (calls == 0)
+            executed++;
+          break;
+        case OpCode.CHECK_CALL:
+          function(stack[sp - 1], readU24(code, ip), (Token) constants[readU24(code, ip + 3)]);
+          ip += 6;
+          break;
+        case OpCode.CALL: {
+          int count = readU24(code, ip);
+          sp -= count;
+          stack[sp - 1] = call((Compiler.Function) stack[sp - 1], stack, sp, (Token) constants[readU24(code, ip + 3)]);
+          ip += 6;
+          break;
+        }
+        case OpCode.RETURN_VALUE:
+          return stack[--sp];
+        case OpCode.RETURN:
+          return null;
+        default:
+          throw new IllegalStateException("Unknown opcode " + instruction + " at " + (ip - 1) + ".");
+      }
+    }
+  }
+
+  /**
+   * Checks what a call calls, before its arguments are evaluated
+   */
+  private static void function(Object callee, int count, Token paren) {
+    if (!(callee instanceof Compiler.Function)) {
+      throw new RuntimeError(paren, "Can only call functions.");
+    }
+    int arity = ((Compiler.Function) callee).arity;
+    if (count != arity) {
+      throw new RuntimeError(paren, "Expected " + arity + " arguments but got " + count + ".");
+    }
+  }
+
+  /**
+   * Runs a function with the arguments that are on the caller's stack from
+   * `arguments` on
+   */
+  private Object call(Compiler.Function function, Object[] caller, int arguments, Token paren) {
+    int size = function.declaration.frameSize;
+    if (calls == frames.length) {
+      frames = Arrays.copyOf(frames, calls * 2);
+    }
+    Object[] frame = frames[calls];
+    if (frame == null || frame.length < size + function.chunk.maxStack) {
+      frame = new Object[Math.max(size + function.chunk.maxStack, 16)];
+      frames[calls] = frame;
+    }
+    System.arraycopy(caller, arguments, frame, 0, function.arity);
+    Arrays.fill(frame, function.arity, size, Environment.UNDEFINED);
+
+    calls++;
+    try {
+      return run(function.chunk, frame, size);
+    } catch (StackOverflowError e) {
+      throw new RuntimeError(paren, "Stack overflow.");
+    } finally {
+      calls--;
+      // Nothing of the call stays reachable
+      Arrays.fill(frame, null);
+    }
+  }
+
+  private static int readU24(byte[] code, int ip) {
+    return ((code[ip] & 0xFF) << 16) | ((code[ip + 1] & 0xFF) << 8) | (code[ip + 2] & 0xFF);
+  }
+
+  private static void checkNumberOperands(Object[] constants, byte[] code, int ip, Object a, Object b) {
+    if (a instanceof Double && b instanceof Double)
+      return;
+    throw new RuntimeError((Token) constants[readU24(code, ip)], "Operands must be numbers.");
+  }
+}
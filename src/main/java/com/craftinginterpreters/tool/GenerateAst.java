@@ -3,13 +3,66 @@ package com.craftinginterpreters.tool;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * GenerateAst
+ * Writes Expr.java and Stmt.java. Besides the final fields every node is
+ * made of, a node can have fields that later passes fill in and code that
+ * runs at the end of its constructor, both written as they are given here.
  */
 public class GenerateAst {
 
+  // Fields of the base classes
+  private static final Map<String, List<String>> BASE_FIELDS = Map.of(
+      "Expr", Arrays.asList(
+          "// True when the expression can only produce a number (or fail), the",
+          "// Interpreter evaluates those as raw doubles",
+          "boolean numeric = false;"),
+      "Stmt", Arrays.asList(
+          "// Line the statement starts on, set by the Parser",
+          "int line;"));
+
+  // Code at the end of a node's constructor
+  private static final Map<String, List<String>> INITIALIZERS = Map.of(
+      "Binary", Arrays.asList(
+          "switch (operator.type) {",
+          "  case MINUS:",
+          "  case STAR:",
+          "  case SLASH:",
+          "    this.numeric = true;",
+          "    break;",
+          "  case PLUS:",
+          "    this.numeric = left.numeric && right.numeric;",
+          "    break;",
+          "  default:",
+          "    break;",
+          "}"),
+      "Grouping", Arrays.asList("this.numeric = expression.numeric;"),
+      "Literal", Arrays.asList("this.numeric = value instanceof Double;"),
+      "Unary", Arrays.asList("this.numeric = operator.type == TokenType.MINUS;"));
+
+  // Fields after the final ones
+  private static final Map<String, List<String>> MUTABLE_FIELDS = Map.of(
+      "Variable", Arrays.asList(
+          "// Filled in by the Resolver, -1 means look the name up at runtime",
+          "int depth = -1;",
+          "int slot = -1;"),
+      "Var", Arrays.asList(
+          "// Filled in by the Resolver",
+          "int slot = -1;"),
+      "Function", Arrays.asList(
+          "// Filled in by the Resolver: the function's global slot and how many",
+          "// slots its parameters and locals take in a call frame",
+          "int slot = -1;",
+          "int frameSize = 0;"));
+
+  // Comments on final fields, by node and field name
+  private static final Map<String, String> FIELD_COMMENTS = Map.of(
+      "Call.paren", "// The closing parenthesis, where call errors are reported");
+
   public static void main(String[] args) throws IOException {
     if (args.length != 1) {
       System.err.println("Usage: generate_ast <output_directory>");
@@ -17,16 +70,21 @@ public class GenerateAst {
     }
     String outputdir = args[0];
     defineAst(outputdir, "Expr", Arrays.asList(
-        "Binary : Expr left, Token operator, Expr right",
+        "Binary   : Expr left, Token operator, Expr right",
         "Grouping : Expr expression",
-        "Literal : Object value",
-        "Unary : Token operator, Expr right",
-        "Variable : Token name"));
+        "Literal  : Object value",
+        "Unary    : Token operator, Expr right",
+        "Comma    : List<Expr> exprs",
+        "Ternary  : Expr condition, Expr then, Expr elseThen, Token operator",
+        "Variable : Token name",
+        "Call     : Expr callee, Token paren, List<Expr> arguments"));
 
     defineAst(outputdir, "Stmt", Arrays.asList(
         "Expression : Expr expr",
         "Print      : Expr expr",
-        "Var        : Token name, Expr initializer"));
+        "Var        : Token name, Expr initializer",
+        "Function   : Token name, List<Token> params, List<Stmt> body",
+        "Return     : Token keyword, Expr value"));
   }
 
   private static void defineAst(String outputdir, String baseName, List<String> types)
@@ -39,17 +97,20 @@ public class GenerateAst {
     writer.println("import java.util.List;");
     writer.println();
     writer.println("abstract class " + baseName + " {");
+    printLines(writer, "  ", BASE_FIELDS.getOrDefault(baseName, Collections.emptyList()));
+    writer.println();
 
     defineVisitor(writer, baseName, types);
 
     for (String type : types) {
       String className = type.split(":")[0].trim();
       String fields = type.split(":")[1].trim();
+      writer.println();
       defineType(writer, baseName, className, fields);
     }
 
     writer.println();
-    writer.println(" abstract <R> R accept(Visitor<R> visitor);");
+    writer.println("  abstract <R> R accept(Visitor<R> visitor);");
 
     writer.println("}");
     writer.close();
@@ -68,6 +129,7 @@ public class GenerateAst {
       String name = field.split(" ")[1];
       writer.println("      this." + name + " = " + name + ";");
     }
+    printLines(writer, "      ", INITIALIZERS.getOrDefault(className, Collections.emptyList()));
 
     writer.println("    }");
 
@@ -82,22 +144,36 @@ public class GenerateAst {
     // Fields.
     writer.println();
     for (String field : fields) {
+      String comment = FIELD_COMMENTS.get(className + "." + field.split(" ")[1]);
+      if (comment != null)
+        writer.println("    " + comment);
       writer.println("    final " + field + ";");
     }
+    printLines(writer, "    ", MUTABLE_FIELDS.getOrDefault(className, Collections.emptyList()));
 
     writer.println("  }");
   }
 
   private static void defineVisitor(
       PrintWriter writer, String baseName, List<String> types) {
-    writer.println("  interface Visitor<R> {");
+    writer.println("  /**");
+    writer.println("   * Visitor");
+    writer.println("   */");
+    writer.println("  public interface Visitor<R> {");
 
     for (String type : types) {
       String typeName = type.split(":")[0].trim();
+      writer.println();
       writer.println("    R visit" + typeName + baseName + "(" +
           typeName + " " + baseName.toLowerCase() + ");");
     }
 
     writer.println("  }");
   }
+
+  private static void printLines(PrintWriter writer, String indent, List<String> lines) {
+    for (String line : lines) {
+      writer.println(indent + line);
+    }
+  }
 }
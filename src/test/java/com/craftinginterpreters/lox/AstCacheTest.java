@@ -0,0 +1,115 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * AstCacheTest
+ * What the cache decodes must be what was parsed, and anything it can't
+ * vouch for must be a miss
+ */
+class AstCacheTest {
+  private static final String SOURCE = "var a = 1.5;\n"
+      + "var s = \"multi\nline\" + a;\n"
+      + "fun f(x, y) {\n  var z = -x * (y - 2);\n  return z > 0 ? (x, y) : !nil;\n}\n"
+      + "print f(a, true == false) + 3;\n"
+      + "fun g() {\n  return;\n}\n"
+      + "g();\n";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void loadsWhatWasStored() {
+    byte[] bytes = SOURCE.getBytes(StandardCharsets.UTF_8);
+    List<Stmt> parsed = parse(SOURCE);
+    AstCache cache = new AstCache(directory, StandardCharsets.UTF_8);
+    assertNull(cache.load(bytes));
+
+    cache.store(bytes, parsed);
+    List<Stmt> loaded = cache.load(bytes);
+
+    assertNotNull(loaded);
+    assertEquals(StmtPrinter.print(parsed), StmtPrinter.print(loaded));
+  }
+
+  @Test
+  void anotherCharsetIsAMiss() {
+    byte[] bytes = SOURCE.getBytes(StandardCharsets.UTF_8);
+    new AstCache(directory, StandardCharsets.UTF_8).store(bytes, parse(SOURCE));
+
+    assertNull(new AstCache(directory, StandardCharsets.ISO_8859_1).load(bytes));
+    assertNotEquals(AstCache.key(bytes, StandardCharsets.UTF_8), AstCache.key(bytes, StandardCharsets.ISO_8859_1));
+  }
+
+  @Test
+  void corruptFileIsAMiss() throws IOException {
+    byte[] bytes = SOURCE.getBytes(StandardCharsets.UTF_8);
+    AstCache cache = new AstCache(directory, StandardCharsets.UTF_8);
+    cache.store(bytes, parse(SOURCE));
+    Path file = directory.resolve(AstCache.key(bytes, StandardCharsets.UTF_8));
+    byte[] stored = Files.readAllBytes(file);
+
+    Files.write(file, new byte[] { 1, 2, 3 });
+    assertNull(cache.load(bytes));
+
+    // Cut short in the middle of the statements
+    Files.write(file, Arrays.copyOf(stored, stored.length / 2));
+    assertNull(cache.load(bytes));
+  }
+
+  @Test
+  void hugeCountIsAMiss() throws IOException {
+    byte[] bytes = SOURCE.getBytes(StandardCharsets.UTF_8);
+    AstCache cache = new AstCache(directory, StandardCharsets.UTF_8);
+    cache.store(bytes, parse(SOURCE));
+    Path file = directory.resolve(AstCache.key(bytes, StandardCharsets.UTF_8));
+    byte[] header = Arrays.copyOf(Files.readAllBytes(file), 8);
+    byte[] huge = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 };
+
+    // As many strings, then no strings and as many statements
+    Files.write(file, concat(header, huge));
+    assertNull(cache.load(bytes));
+    Files.write(file, concat(header, new byte[] { 0 }, huge));
+    assertNull(cache.load(bytes));
+  }
+
+  @Test
+  void unwritableDirectoryIsIgnored() throws IOException {
+    Path notADirectory = Files.createFile(directory.resolve("file"));
+    AstCache cache = new AstCache(notADirectory, StandardCharsets.UTF_8);
+    byte[] bytes = SOURCE.getBytes(StandardCharsets.UTF_8);
+
+    cache.store(bytes, parse(SOURCE));
+    assertNull(cache.load(bytes));
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    byte[] result = new byte[0];
+    for (byte[] part : parts) {
+      int length = result.length;
+      result = Arrays.copyOf(result, length + part.length);
+      System.arraycopy(part, 0, result, length, part.length);
+    }
+    return result;
+  }
+
+  private static List<Stmt> parse(String source) {
+    RecordingReporter errors = new RecordingReporter();
+    List<Stmt> statements = new Parser(new Scanner(source, new SymbolTable(), errors).scanTokens(), errors).parse();
+    assertEquals(List.of(), errors.errors);
+    return statements;
+  }
+}
@@ -0,0 +1,83 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * BatchRunnerTest
+ * Whatever one script does, the others still run and the summary lists
+ * every one of them
+ */
+class BatchRunnerTest {
+  @TempDir
+  Path directory;
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+  private PrintStream systemOut;
+  private PrintStream systemErr;
+
+  @BeforeEach
+  void capture() {
+    systemOut = System.out;
+    systemErr = System.err;
+    System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+    System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+  }
+
+  @AfterEach
+  void restore() {
+    System.setOut(systemOut);
+    System.setErr(systemErr);
+  }
+
+  @Test
+  void crashingScriptOnlyFailsItself() throws IOException {
+    // Nested deeper than the parser's stack
+    write("a_crash.jlox", "print " + "(".repeat(20000) + "1" + ")".repeat(20000) + ";");
+    write("b_error.jlox", "print 1;\nprint 1 / 0;");
+    write("c_good.jlox", "print \"good\";");
+
+    int exitCode = new BatchRunner(2).run(List.of(directory.toString()));
+
+    assertEquals(70, exitCode);
+    String output = out.toString(StandardCharsets.UTF_8);
+    assertTrue(output.contains(directory.resolve("b_error.jlox") + " <==\n1\n"), output);
+    assertTrue(output.contains(directory.resolve("c_good.jlox") + " <==\ngood\n"), output);
+    assertTrue(output.contains("  70 "), output);
+    assertTrue(output.contains("3 scripts, 2 failed"), output);
+
+    String errors = err.toString(StandardCharsets.UTF_8);
+    assertTrue(errors.contains("Crashed: java.lang.StackOverflowError"), errors);
+    assertTrue(errors.contains("You are trying to divide by zero.\n[line 2] at /"), errors);
+  }
+
+  @Test
+  void missingFileIsNoInput() throws IOException {
+    write("good.jlox", "print 1;");
+
+    int exitCode = new BatchRunner(1).run(List.of(directory.resolve("good.jlox").toString(),
+        directory.resolve("missing.jlox").toString()));
+
+    assertEquals(66, exitCode);
+    assertTrue(out.toString(StandardCharsets.UTF_8).contains("2 scripts, 1 failed"));
+    assertTrue(err.toString(StandardCharsets.UTF_8).contains("Cannot read " + directory.resolve("missing.jlox")));
+  }
+
+  private void write(String name, String source) throws IOException {
+    Files.write(directory.resolve(name), source.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,135 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * BudgetTest
+ * A run within a Budget stops, as a runtime error, at the first statement
+ * that would go over it
+ */
+class BudgetTest {
+  // Runs 2^n calls, far longer than any limit below for n = 30
+  private static final String SPIN = "fun spin(n) {\n"
+      + "  return n < 1 ? 0 : spin(n - 1) + spin(n - 1);\n"
+      + "}\n";
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final RecordingReporter errors = new RecordingReporter();
+  private final LoxEngine.Context context = new LoxEngine().newContext(
+      new PrintStream(out, true, StandardCharsets.UTF_8), errors);
+
+  @Test
+  void stopsAtTheStatementOverTheLimit() {
+    Budget budget = new Budget(2, null);
+
+    assertFalse(context.run("print 1;\nprint 2;\nprint 3;", budget));
+    assertEquals("1\n2\n", output());
+    assertEquals(List.of("Statement budget of 2 exhausted.\n[line 3] at print"), errors.errors);
+    assertTrue(budget.isExceeded());
+  }
+
+  @Test
+  void limitCountsAcrossRuns() {
+    Budget budget = new Budget(3, null);
+
+    assertTrue(context.run("var a = 1;\nprint a;", budget));
+    assertFalse(budget.isExceeded());
+    assertFalse(context.run("print a + 1;\nprint a + 2;", budget));
+    assertEquals("1\n2\n", output());
+    assertEquals(List.of("Statement budget of 3 exhausted.\n[line 2] at print"), errors.errors);
+  }
+
+  @Test
+  void staysWithinALimitItDoesNotReach() {
+    Budget budget = new Budget(100, Duration.ofMinutes(1));
+
+    assertTrue(context.run(SPIN + "print spin(3);", budget));
+    assertEquals("0\n", output());
+    assertEquals(List.of(), errors.errors);
+    assertFalse(budget.isExceeded());
+  }
+
+  @Test
+  void stopsAtTheDeadline() {
+    Budget budget = new Budget(0, Duration.ofMillis(50));
+
+    assertFalse(context.run(SPIN + "print spin(30);", budget));
+    assertEquals("", output());
+    assertEquals(1, errors.errors.size());
+    assertTrue(errors.errors.get(0).startsWith("Deadline of 50 ms exceeded.\n[line "), errors.errors.get(0));
+    assertTrue(budget.isExceeded());
+  }
+
+  @Test
+  void stopsWhenCancelledFromAnotherThread() throws Exception {
+    Budget budget = Budget.unlimited();
+    CompletableFuture<Boolean> run = CompletableFuture.supplyAsync(() -> context.run(SPIN + "print spin(30);", budget));
+
+    Thread.sleep(50);
+    budget.cancel();
+
+    assertFalse(run.get(30, TimeUnit.SECONDS));
+    assertEquals(1, errors.errors.size());
+    assertTrue(errors.errors.get(0).startsWith("Execution cancelled.\n[line "), errors.errors.get(0));
+    assertTrue(budget.isCancelled());
+    assertTrue(budget.isExceeded());
+  }
+
+  @Test
+  void runtimeErrorIsNotExceeded() {
+    Budget budget = new Budget(100, null);
+
+    assertFalse(context.run("print 1 / 0;", budget));
+    assertFalse(budget.isExceeded());
+  }
+
+  @Test
+  void stopsAStringOverTheHeapQuotaAtItsOperator() {
+    Budget budget = new Budget(0, null, 300);
+    String hundred = "x".repeat(100);
+
+    assertFalse(context.run("var s = \"" + hundred + "\";\nprint s + s;\nprint 1;", budget));
+    assertEquals("", output());
+    assertEquals(List.of("Heap quota of 300 bytes exceeded.\n[line 2] at +"), errors.errors);
+    assertTrue(budget.isExceeded());
+  }
+
+  @Test
+  void redefiningAVariableReleasesItsOldValue() {
+    Budget budget = new Budget(0, null, 100);
+    String fifty = "x".repeat(50);
+
+    assertTrue(context.run("var s = \"" + fifty + "\";\nvar s = \"" + fifty.replace('x', 'y') + "\";", budget));
+    assertEquals(List.of(), errors.errors);
+    assertEquals(90, budget.peakBytes());
+  }
+
+  @Test
+  void measuresPeakBytesWithoutALimit() {
+    Budget budget = Budget.unlimited();
+
+    // A number, then a four character string, then a call whose parameter
+    // and local are released when it returns
+    assertTrue(context.run("var n = 1;\nvar s = \"abcd\";\n"
+        + "fun f(x) {\n  var y = x + x;\n  return 0;\n}\nprint f(s);\nprint f(s);", budget));
+    assertEquals("0\n0\n", output());
+    assertEquals(16 + 44 + 44 + 48, budget.peakBytes());
+    assertFalse(budget.isExceeded());
+  }
+
+  private String output() {
+    return out.toString(StandardCharsets.UTF_8);
+  }
+}
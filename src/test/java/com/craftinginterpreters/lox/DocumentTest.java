@@ -0,0 +1,102 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * DocumentTest
+ * After any edit a Document must hold what parsing the edited source from
+ * scratch gives, while parsing again only the declarations it touched
+ */
+class DocumentTest {
+  private static final String SOURCE = "var a = 1;\nvar b = \"two\";\n/* a\n comment */\nprint a + 2;\nvar c = a;\n";
+
+  @Test
+  void editReparsesOnlyTheTouchedDeclaration() {
+    Document document = new Document(SOURCE, new RecordingReporter());
+    List<Stmt> before = new ArrayList<>(document.statements());
+
+    int offset = SOURCE.indexOf("2;");
+    List<Stmt> after = document.edit(offset, 1, "40");
+
+    assertEquals(1, document.reparsed());
+    assertSame(before.get(0), after.get(0));
+    assertSame(before.get(1), after.get(1));
+    assertNotSame(before.get(2), after.get(2));
+    assertSame(before.get(3), after.get(3));
+    assertMatchesFullParse(document);
+  }
+
+  @Test
+  void newLinesMoveTheLinesOfKeptStatements() {
+    Document document = new Document(SOURCE, new RecordingReporter());
+    Stmt last = document.statements().get(3);
+
+    document.edit(0, 0, "\n\n");
+
+    // A copy on the new lines, what was parsed before never changes
+    Stmt moved = document.statements().get(3);
+    assertNotSame(last, moved);
+    assertEquals(8, moved.line);
+    assertEquals(8, ((Stmt.Var) moved).name.line);
+    assertEquals(6, ((Stmt.Var) last).name.line);
+    assertMatchesFullParse(document);
+
+    // The same number of lines keeps them
+    document.edit(0, 1, "\n");
+    assertSame(moved, document.statements().get(3));
+  }
+
+  @Test
+  void editsThatOpenAndCloseCommentsAndStrings() {
+    Document document = new Document(SOURCE, new RecordingReporter());
+
+    // Comments out the print, up to the comment that was already there
+    document.edit(document.source().indexOf("print"), 0, "/* ");
+    assertMatchesFullParse(document);
+    document.edit(document.source().indexOf("2;") + 2, 0, " */");
+    assertMatchesFullParse(document);
+    assertEquals(3, document.statements().size());
+
+    // A string that runs to the end, then back to the original
+    document.edit(document.source().indexOf("var c"), 0, "\"");
+    assertMatchesFullParse(document);
+    document.edit(document.source().indexOf("\"var c"), 1, "");
+    document.edit(document.source().indexOf("2; */") + 2, 3, "");
+    document.edit(document.source().indexOf("/* print"), 3, "");
+    assertEquals(SOURCE, document.source());
+    assertMatchesFullParse(document);
+    assertEquals(4, document.statements().size());
+  }
+
+  @Test
+  void syntaxErrorsGoToTheDocumentsReporter() {
+    RecordingReporter errors = new RecordingReporter();
+    Document document = new Document(SOURCE, errors);
+    assertTrue(errors.errors.isEmpty());
+
+    document.edit(SOURCE.indexOf("c ="), 1, "");
+
+    assertEquals(List.of("[line 6] ERROR at '=': Expect variable name."), errors.errors);
+    assertNull(document.statements().get(3));
+  }
+
+  /**
+   * Compares the Document's statements with a parse of its whole source
+   */
+  private static void assertMatchesFullParse(Document document) {
+    RecordingReporter errors = new RecordingReporter();
+    List<Stmt> expected = new Parser(new Scanner(document.source(), new SymbolTable(), errors).scanTokens(), errors)
+        .parse();
+    assertEquals(StmtPrinter.print(expected), StmtPrinter.print(document.statements()));
+  }
+
+}
@@ -0,0 +1,154 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DynamicContainer;
+import org.junit.jupiter.api.DynamicNode;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * GoldenTest
+ * Runs every script in src/test/resources/scripts with jlox, once per engine
+ * and mode, and checks what it prints against the comments in the script:
+ *
+ * <pre>
+ * print 1 + 2; // expect: 3
+ * print 1 / 0; // expect runtime error: You are trying to divide by zero.
+ * var = 1;     // expect error: [line 1] ERROR at '=': Expect variable name.
+ * </pre>
+ *
+ * A runtime error is expected on the line of its comment. Scripts run in a
+ * new JVM, as Lox keeps its state in statics and exits with the script's
+ * status.
+ */
+class GoldenTest {
+  private static final Pattern EXPECT = Pattern.compile("// expect: ?(.*)");
+  private static final Pattern RUNTIME_ERROR = Pattern.compile("// expect runtime error: (.+)");
+  private static final Pattern SYNTAX_ERROR = Pattern.compile("// expect error: (.+)");
+
+  @TempDir
+  static Path home;
+
+  /**
+   * JVM options and jlox flags of every way a script is run, all of them
+   * must print the same
+   */
+  private static final List<String[]> MODES = Arrays.asList(
+      new String[] {},
+      new String[] { "--no-jit" },
+      // Compiles every statement of a function body on its first run
+      new String[] { "-Dlox.jit.threshold=1" },
+      new String[] { "--engine=vm" },
+      new String[] { "--engine=node" },
+      new String[] { "--engine=closure" },
+      new String[] { "--stream" },
+      new String[] { "--flat" },
+      // Parses and stores, then loads what was stored
+      new String[] { "--cache" },
+      new String[] { "--cache" });
+
+  @TestFactory
+  Stream<DynamicNode> scripts() throws IOException, URISyntaxException {
+    Path directory = Paths.get(GoldenTest.class.getResource("/scripts").toURI());
+    List<Path> scripts;
+    try (Stream<Path> files = Files.list(directory)) {
+      scripts = files.filter(path -> path.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+    }
+
+    List<DynamicNode> modes = new ArrayList<>();
+    for (String[] mode : MODES) {
+      List<DynamicTest> tests = new ArrayList<>();
+      for (Path script : scripts) {
+        tests.add(DynamicTest.dynamicTest(script.getFileName().toString(), () -> check(script, mode)));
+      }
+      modes.add(DynamicContainer.dynamicContainer(mode.length == 0 ? "default" : String.join(" ", mode), tests));
+    }
+    return modes.stream();
+  }
+
+  private static void check(Path script, String[] mode) throws Exception {
+    List<String> output = new ArrayList<>();
+    List<String> errors = new ArrayList<>();
+    int status = 0;
+    int errorLine = 0;
+
+    List<String> lines = Files.readAllLines(script, StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++) {
+      Matcher matcher;
+      if ((matcher = RUNTIME_ERROR.matcher(lines.get(i))).find()) {
+        errors.add(matcher.group(1));
+        errorLine = i + 1;
+        status = 70;
+      } else if ((matcher = SYNTAX_ERROR.matcher(lines.get(i))).find()) {
+        errors.add(matcher.group(1));
+        status = 65;
+      } else if ((matcher = EXPECT.matcher(lines.get(i))).find()) {
+        output.add(matcher.group(1));
+      }
+    }
+
+    Run run = run(script, mode);
+    assertEquals(output, run.output, "output");
+    if (errorLine != 0) {
+      assertEquals(2, run.errors.size(), () -> "errors: " + run.errors);
+      assertEquals(errors.get(0), run.errors.get(0));
+      assertTrue(run.errors.get(1).startsWith("[line " + errorLine + "] at "), run.errors.get(1));
+    } else {
+      assertEquals(errors, run.errors, "errors");
+    }
+    assertEquals(status, run.status, "exit status");
+  }
+
+  private static class Run {
+    List<String> output;
+    List<String> errors;
+    int status;
+  }
+
+  private static Run run(Path script, String[] mode) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-Duser.home=" + home);
+    command.add("-cp");
+    command.add(Paths.get(Lox.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+    List<String> flags = new ArrayList<>();
+    for (String option : mode) {
+      (option.startsWith("-D") ? command : flags).add(option);
+    }
+    command.add(Lox.class.getName());
+    command.addAll(flags);
+    command.add(script.toString());
+
+    Path out = Files.createTempFile(home, "out", ".txt");
+    Path err = Files.createTempFile(home, "err", ".txt");
+    Process process = new ProcessBuilder(command).redirectOutput(out.toFile()).redirectError(err.toFile()).start();
+    if (!process.waitFor(60, TimeUnit.SECONDS)) {
+      process.destroyForcibly();
+      throw new AssertionError(script + " did not finish");
+    }
+
+    Run run = new Run();
+    run.output = Files.readAllLines(out, StandardCharsets.UTF_8);
+    run.errors = Files.readAllLines(err, StandardCharsets.UTF_8);
+    run.status = process.exitValue();
+    return run;
+  }
+}
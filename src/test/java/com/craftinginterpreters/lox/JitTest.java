@@ -0,0 +1,99 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * JitTest
+ * Statements compiled by the Jit must do what the tree walk does, and stop
+ * doing it when their speculation fails
+ */
+class JitTest {
+  // Calls f(x, y) 2048 times, more than Jit.THRESHOLD
+  private static final String SPIN = "fun spin(n, x, y) {\n"
+      + "  return n < 1 ? f(x, y) : spin(n - 1, x, y) + spin(n - 1, x, y);\n"
+      + "}\n";
+
+  @Test
+  void compilesHotStatements() {
+    long compiled = Jit.compiled.sum();
+    String source = "fun f(a, b) {\n  return a * b + 1;\n}\n" + SPIN + "print spin(11, 2, 3);";
+
+    assertEquals("14336\n", run(source, true));
+    assertTrue(Jit.compiled.sum() > compiled);
+  }
+
+  @Test
+  void deoptimizesWhenAnAdditionGetsStrings() {
+    long deoptimized = Jit.deoptimized.sum();
+    String source = "fun f(a, b) {\n  return a + b;\n}\n" + SPIN
+        + "print spin(11, 1, 1);\nprint f(\"a\", \"b\");\nprint f(1, \"b\");\nprint spin(2, 1, 2);";
+
+    assertEquals("4096\nab\n1b\n12\n", run(source, true));
+    assertTrue(Jit.deoptimized.sum() > deoptimized);
+  }
+
+  @Test
+  void compiledErrorsMatchTheTreeWalk() {
+    String source = "fun f(a, b) {\n  return a / b;\n}\n" + SPIN + "print spin(11, 1, 1);\nprint f(1, 0);";
+
+    String expected = "2048\nYou are trying to divide by zero.\n[line 2] at /\n";
+    assertEquals(expected, run(source, false));
+    assertEquals(expected, run(source, true));
+  }
+
+  @Test
+  void programRunsOnManyThreadsAtOnce() throws Exception {
+    LoxEngine engine = new LoxEngine();
+    String source = "fun fib(n) {\n  return n < 2 ? n : fib(n - 1) + fib(n - 2);\n}\nprint fib(18);";
+    LoxEngine.Program program = engine.compile(source, new RecordingReporter());
+
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> runs = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        runs.add(pool.submit(() -> {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          RecordingReporter errors = new RecordingReporter();
+          engine.newContext(new PrintStream(out, true, StandardCharsets.UTF_8), errors).run(program);
+          return out.toString(StandardCharsets.UTF_8) + errors.errors;
+        }));
+      }
+      for (Future<String> run : runs) {
+        assertEquals("2584\n[]", run.get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * @return What the source prints, then its errors
+   */
+  private static String run(String source, boolean jit) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PrintStream stream = new PrintStream(out, true, StandardCharsets.UTF_8);
+    RecordingReporter errors = new RecordingReporter();
+    List<Stmt> statements = new Parser(new Scanner(source, new SymbolTable(), errors).scanTokens(), errors).parse();
+    Interpreter interpreter = new Interpreter(new Environment(), OutputSink.of(stream), errors, jit);
+    new Resolver(interpreter.globals).resolve(statements);
+    interpreter.interpret(statements);
+
+    StringBuilder printed = new StringBuilder(out.toString(StandardCharsets.UTF_8));
+    for (String error : errors.errors) {
+      printed.append(error).append('\n');
+    }
+    return printed.toString();
+  }
+}
@@ -0,0 +1,88 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ParallelFrontEndTest
+ * Sources of a few MB, cut into chunks and segments on 4 threads, must give
+ * the statements, lines and errors of the sequential Scanner and Parser
+ */
+class ParallelFrontEndTest {
+  private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @AfterAll
+  static void shutdown() {
+    pool.shutdown();
+  }
+
+  @Test
+  void chunksStartingInsideStringsAndComments() {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 40000; i++) {
+      source.append("var v").append(i % 300).append(" = v").append(i % 7).append(" + ").append(i).append(";\n");
+      if (i % 5000 == 0) {
+        // Long enough that chunk boundaries fall inside them
+        source.append("/* comment ").append("x\n".repeat(40000)).append(" /* nested */ */\n");
+        source.append("print \"string ").append("y\n".repeat(40000)).append("\";\n");
+      }
+    }
+    assertSameAsSequential(source.toString());
+  }
+
+  @Test
+  void syntaxErrorsInEveryChunk() {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 80000; i++) {
+      source.append("print ").append(i).append(i % 9000 == 0 ? " +;\n" : ";\n");
+      if (i % 25000 == 0)
+        source.append("var = 1;\n");
+    }
+    source.append("\"unterminated");
+    assertTrue(assertSameAsSequential(source.toString()).size() > 10);
+  }
+
+  @Test
+  void namesAreInternedOnceAcrossChunks() {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      source.append("var name").append(i % 50).append(" = ").append(i).append(";\n");
+    }
+    SymbolTable symbols = new SymbolTable();
+    List<Stmt> statements = new ParallelFrontEnd(pool).parse(source.toString(), symbols, new RecordingReporter());
+
+    Map<String, Boolean> names = new IdentityHashMap<>();
+    for (Stmt statement : statements) {
+      String name = ((Stmt.Var) statement).name.lexeme;
+      assertSame(symbols.intern(name), name);
+      names.put(name, true);
+    }
+    assertEquals(50, names.size());
+  }
+
+  /**
+   * @return The syntax errors of the source
+   */
+  private static List<String> assertSameAsSequential(String source) {
+    assertTrue(source.length() > 4 * (1 << 16), "too short to be cut into chunks");
+    RecordingReporter sequentialErrors = new RecordingReporter();
+    List<Stmt> sequential = new Parser(
+        new Scanner(source, new SymbolTable(), sequentialErrors).scanTokens(), sequentialErrors).parse();
+
+    RecordingReporter parallelErrors = new RecordingReporter();
+    List<Stmt> parallel = new ParallelFrontEnd(pool).parse(source, new SymbolTable(), parallelErrors);
+
+    assertEquals(sequentialErrors.errors, parallelErrors.errors);
+    assertEquals(StmtPrinter.print(sequential), StmtPrinter.print(parallel));
+    return sequentialErrors.errors;
+  }
+}
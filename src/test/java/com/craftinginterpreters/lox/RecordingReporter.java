@@ -0,0 +1,22 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RecordingReporter
+ * Keeps the errors reported to it, formatted the way Lox prints them
+ */
+final class RecordingReporter implements ErrorReporter {
+  final List<String> errors = new ArrayList<>();
+
+  @Override
+  public void syntaxError(int line, String where, String message) {
+    errors.add(Lox.formatSyntaxError(line, where, message));
+  }
+
+  @Override
+  public void runtimeError(int line, String lexeme, String message) {
+    errors.add(Lox.formatRuntimeError(line, lexeme, message));
+  }
+}
@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StmtPrinter
+ * Prints statements with their lines, so that two parses can be compared
+ */
+final class StmtPrinter implements Stmt.Visitor<String> {
+  private final AstPrinter expressions = new AstPrinter();
+
+  static List<String> print(List<Stmt> statements) {
+    StmtPrinter printer = new StmtPrinter();
+    List<String> printed = new ArrayList<>();
+    for (Stmt statement : statements) {
+      printed.add(statement == null ? "null" : statement.accept(printer));
+    }
+    return printed;
+  }
+
+  private String print(Expr expr) {
+    return expr == null ? "" : expressions.print(expr);
+  }
+
+  @Override
+  public String visitExpressionStmt(Stmt.Expression stmt) {
+    return "[line " + stmt.line + "] " + print(stmt.expr) + ";";
+  }
+
+  @Override
+  public String visitPrintStmt(Stmt.Print stmt) {
+    return "[line " + stmt.line + "] print " + print(stmt.expr) + ";";
+  }
+
+  @Override
+  public String visitVarStmt(Stmt.Var stmt) {
+    return "[line " + stmt.line + "] var " + stmt.name.lexeme + "@" + stmt.name.line + " = " + print(stmt.initializer)
+        + ";";
+  }
+
+  @Override
+  public String visitFunctionStmt(Stmt.Function stmt) {
+    List<String> params = new ArrayList<>();
+    for (Token param : stmt.params) {
+      params.add(param.lexeme);
+    }
+    return "[line " + stmt.line + "] fun " + stmt.name.lexeme + "(" + String.join(", ", params) + ") "
+        + print(stmt.body);
+  }
+
+  @Override
+  public String visitReturnStmt(Stmt.Return stmt) {
+    return "[line " + stmt.line + "] return " + print(stmt.value) + ";";
+  }
+}
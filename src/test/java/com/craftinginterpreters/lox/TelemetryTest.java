@@ -0,0 +1,75 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TelemetryTest
+ * Every engine counts the same statements for the same script
+ */
+class TelemetryTest {
+  // Four top-level statements, each call runs three more in the body
+  private static final String SOURCE = "fun f(n) {\n"
+      + "  var a = n;\n"
+      + "  print a;\n"
+      + "  a + 1;\n"
+      + "  return a;\n"
+      + "}\n"
+      + "var x = f(1);\n"
+      + "print f(2);\n"
+      + "f(3);\n";
+
+  private final OutputSink out = OutputSink.of(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+  @Test
+  void treeCountsTopLevelStatements() {
+    assertEquals(4, statements(statements -> {
+      Interpreter interpreter = new Interpreter(new Environment(), out, new RecordingReporter());
+      new Resolver(interpreter.globals).resolve(statements);
+      interpreter.interpret(statements);
+    }));
+  }
+
+  @Test
+  void vmCountsTopLevelStatements() {
+    assertEquals(4, statements(statements -> {
+      VM vm = new VM(out);
+      new Resolver(vm.globals).resolve(statements);
+      vm.interpret(new Compiler().compile(statements));
+    }));
+  }
+
+  @Test
+  void nodeCountsTopLevelStatements() {
+    assertEquals(4, statements(statements -> {
+      NodeInterpreter interpreter = new NodeInterpreter();
+      new Resolver(interpreter.globals).resolve(statements);
+      interpreter.interpret(new NodeBuilder(interpreter, out).build(statements));
+    }));
+  }
+
+  @Test
+  void closureCountsTopLevelStatements() {
+    assertEquals(4, statements(statements -> {
+      ClosureInterpreter interpreter = new ClosureInterpreter(new Environment(), out, new RecordingReporter());
+      new Resolver(interpreter.globals).resolve(statements);
+      interpreter.interpret(statements);
+    }));
+  }
+
+  private static long statements(Consumer<List<Stmt>> engine) {
+    RecordingReporter errors = new RecordingReporter();
+    List<Stmt> statements = new Parser(new Scanner(SOURCE, new SymbolTable(), errors).scanTokens(), errors).parse();
+    long before = Telemetry.statements.sum();
+    engine.accept(statements);
+    assertEquals(List.of(), errors.errors);
+    return Telemetry.statements.sum() - before;
+  }
+}